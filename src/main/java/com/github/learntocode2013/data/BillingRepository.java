@@ -1,14 +1,32 @@
 package com.github.learntocode2013.data;
 
+import static com.github.learntocode2013.util.UpdateExpressionTemplate.string;
+import static com.github.learntocode2013.util.UpdateExpressionTemplate.stringSet;
+
 import com.github.learntocode2013.model.BillingAdmin;
 import com.github.learntocode2013.model.SaasAppInfo;
+import com.github.learntocode2013.model.SingleTableDesign;
+import com.github.learntocode2013.model.SingleTableDesign.EntityType;
+import com.github.learntocode2013.model.TenantItemCollection;
+import com.github.learntocode2013.util.CapacityAccountant;
+import com.github.learntocode2013.util.IndexSpec;
+import com.github.learntocode2013.util.ItemCollectionAction;
 import com.github.learntocode2013.util.Operations;
+import com.github.learntocode2013.util.TableSpec;
+import com.github.learntocode2013.util.UpdateExpressionTemplate;
+import com.github.learntocode2013.util.WholeTableAction;
 import io.vavr.control.Try;
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
@@ -19,27 +37,61 @@ import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.ConditionCheck;
 import software.amazon.awssdk.enhanced.dynamodb.model.DescribeTableEnhancedResponse;
 import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedResponse;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactDeleteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactPutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedResponse;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
-import software.amazon.awssdk.services.dynamodb.model.DynamoDbResponse;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbResponseMetadata;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.UpdateTimeToLiveResponse;
 
 public class BillingRepository implements Repository {
   public static final String TABLE_NAME = "SaasApp";
   private static final Logger log = LoggerFactory.getLogger(BillingRepository.class);
   private static final String TTL_ATTRIBUTE_NAME = "ttl";
+  private static final String VERSION = "version";
+  private static final int MAX_WRITE_ATTEMPTS = 5;
+  private static final Duration CONFLICT_BACKOFF = Duration.ofMillis(20);
+  private static final Expression PK_NOT_EXISTS = Expression.builder()
+      .expression("attribute_not_exists(pk)")
+      .build();
+  private static final Expression PK_EXISTS = Expression.builder()
+      .expression("attribute_exists(pk)")
+      .build();
+  // Every admin-item update is one shape of this template; absent inputs leave their clause out.
+  // Its values do not depend on the stored item, so it is not conditioned on a version; it
+  // raises the version so a concurrent read-modify-write of the item notices the change.
+  private static final UpdateExpressionTemplate<AdminUpdate> ADMIN_UPDATE =
+      UpdateExpressionTemplate.<AdminUpdate>builder()
+          .set("phoneNumbers.MobileNumber", update -> string(update.cellPhoneNumber()))
+          .set("emailAddress", update -> string(update.emailAddress()))
+          .add("admins", update -> stringSet(update.adminsToAdd()))
+          .delete("admins", update -> stringSet(update.adminsToRemove()))
+          .add(VERSION, update -> AttributeValue.fromN("1"))
+          .condition("attribute_exists(#pk)", Set.of("pk"), Map.of())
+          .build();
+  // Tenant item collections are read whole, so the index carries every attribute
+  private static final TableSpec TABLE_SPEC = TableSpec.builder()
+      .globalIndex(IndexSpec.all(SingleTableDesign.TENANT_ITEMS_INDEX))
+      .build();
   private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
   private final DynamoDbTable<SaasAppInfo> table;
   private final DynamoDbTable<BillingAdmin> adminTable;
+  // Schema of every entity type sharing the table, to map items of a collection query
+  private final Map<EntityType, TableSchema<? extends SingleTableDesign>> schemas =
+      new EnumMap<>(EntityType.class);
+  private volatile CapacityAccountant capacityAccountant;
 
   public BillingRepository(DynamoDbEnhancedClient dynamoDbEnhancedClient) {
     this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
@@ -50,6 +102,17 @@ public class BillingRepository implements Repository {
         TABLE_NAME,
         TableSchema.fromImmutableClass(BillingAdmin.class)
     );
+    schemas.put(EntityType.TENANT, table.tableSchema());
+    schemas.put(EntityType.TENANT_ADMIN, adminTable.tableSchema());
+  }
+
+  /**
+   * Attribute the capacity of every request to the organization it was made for.
+   *
+   * @param capacityAccountant the accountant to record to, or null to stop recording
+   */
+  public void setCapacityAccountant(CapacityAccountant capacityAccountant) {
+    this.capacityAccountant = capacityAccountant;
   }
 
   public Try<UpdateTimeToLiveResponse> enableTtl(DynamoDbClient dynamoDbClient) {
@@ -57,19 +120,23 @@ public class BillingRepository implements Repository {
   }
 
   public Try<DescribeTableEnhancedResponse> createTableIfNotExists() {
-    return Operations.createTableIfNotExists(table, TABLE_NAME, log);
+    return Operations.createTableIfNotExists(table, TABLE_NAME, TABLE_SPEC, log);
+  }
+
+  @WholeTableAction
+  public Try<List<String>> reconcileTable(DynamoDbClient dynamoDbClient) {
+    return Operations.reconcileTable(dynamoDbClient, table, TABLE_SPEC, log);
   }
 
   public Try<PutItemEnhancedResponse<SaasAppInfo>> saveItem(SaasAppInfo saasAppInfo) {
     var request = PutItemEnhancedRequest.builder(SaasAppInfo.class)
-        .item(saasAppInfo)
-        .conditionExpression(Expression.builder()
-            .expression("attribute_not_exists(pk)")
-            .build())
-        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .item(inCollection(saasAppInfo))
+        .conditionExpression(PK_NOT_EXISTS)
+        .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
         .returnValues(ReturnValue.NONE)
         .build();
     return Try.of(() -> table.putItemWithResponse(request))
+        .onSuccess(resp -> record(saasAppInfo.getOrganization(), resp.consumedCapacity()))
         .onSuccess(resp
             -> log.info("Consumed: {} to insert item: {}",
             resp.consumedCapacity().toString(),
@@ -83,14 +150,13 @@ public class BillingRepository implements Repository {
 
   public Try<PutItemEnhancedResponse<BillingAdmin>> saveItem(BillingAdmin billingAdmin) {
     var request = PutItemEnhancedRequest.builder(BillingAdmin.class)
-        .item(billingAdmin)
-        .conditionExpression(Expression.builder()
-            .expression("attribute_not_exists(pk)")
-            .build())
-        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .item(inCollection(billingAdmin))
+        .conditionExpression(PK_NOT_EXISTS)
+        .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
         .returnValues(ReturnValue.NONE)
         .build();
     return Try.of(() -> adminTable.putItemWithResponse(request))
+        .onSuccess(resp -> record(billingAdmin.getOrganization(), resp.consumedCapacity()))
         .onSuccess(resp
             -> log.info("Consumed: {} to insert billing admin item: {}",
             resp.consumedCapacity().toString(),
@@ -102,27 +168,133 @@ public class BillingRepository implements Repository {
         );
   }
 
-  public Try<List<ConsumedCapacity>> deleteSubscriptionViaOrgAdmin(String pk, String adminPk, String requestingUser) {
+  /**
+   * Write a tenant and its admin in one transaction, each only if its key is free. Retrying
+   * with the same token within ten minutes does not write again and still succeeds.
+   *
+   * @param clientRequestToken the idempotency token, at most 36 characters
+   */
+  public Try<List<ConsumedCapacity>> saveTenantWithAdmin(
+      SaasAppInfo saasAppInfo,
+      BillingAdmin billingAdmin,
+      String clientRequestToken) {
+    var request = TransactWriteItemsEnhancedRequest.builder()
+        .addPutItem(table, TransactPutItemEnhancedRequest.builder(SaasAppInfo.class)
+            .item(inCollection(saasAppInfo))
+            .conditionExpression(PK_NOT_EXISTS)
+            .build())
+        .addPutItem(adminTable, TransactPutItemEnhancedRequest.builder(BillingAdmin.class)
+            .item(inCollection(billingAdmin))
+            .conditionExpression(PK_NOT_EXISTS)
+            .build())
+        .clientRequestToken(clientRequestToken)
+        .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
+        .build();
+    return Try.of(() -> dynamoDbEnhancedClient.transactWriteItemsWithResponse(request))
+        .map(TransactWriteItemsEnhancedResponse::consumedCapacity)
+        .onSuccess(consumed -> record(saasAppInfo.getOrganization(), consumed))
+        .onSuccess(consumed -> log.info("Consumed: {} to onboard tenant: {}",
+            consumed, saasAppInfo.getPk()))
+        .onFailure(err -> log.warn("Failed to onboard tenant: {}", saasAppInfo.getPk(), err));
+  }
+
+  /**
+   * Read a tenant, change it and write it back only if nobody wrote it in between, starting
+   * over with a fresh read on a conflict. The key and version cannot be changed.
+   */
+  public Try<SaasAppInfo> updateTenant(String pk, UnaryOperator<SaasAppInfo> change) {
+    return readModifyWrite(table, pk, current -> inCollection(change.apply(current)),
+        (tenant, version) -> tenant.toBuilder().version(version).build())
+        .onFailure(err -> log.warn("Failed to update tenant: {}", pk, err));
+  }
+
+  /**
+   * Read a billing admin item, change it and write it back only if nobody wrote it in
+   * between, starting over with a fresh read on a conflict.
+   */
+  public Try<BillingAdmin> updateAdmin(String adminPk, UnaryOperator<BillingAdmin> change) {
+    return readModifyWrite(adminTable, adminPk, current -> inCollection(change.apply(current)),
+        (admin, version) -> admin.toBuilder().version(version).build())
+        .onFailure(err -> log.warn("Failed to update billing admin item: {}", adminPk, err));
+  }
+
+  // The versioned record extension conditions the put on the version that was read
+  private <T extends SingleTableDesign> Try<T> readModifyWrite(
+      DynamoDbTable<T> target,
+      String pk,
+      UnaryOperator<T> change,
+      BiFunction<T, Long, T> withVersion) {
+    var key = Key.builder().partitionValue(pk).build();
+    return Operations.retryOnConflict(MAX_WRITE_ATTEMPTS, CONFLICT_BACKOFF, () -> {
+      var read = target.getItemWithResponse(GetItemEnhancedRequest.builder()
+          .key(key)
+          .consistentRead(true)
+          .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
+          .build());
+      T current = read.attributes();
+      if (current == null) {
+        throw new NoSuchElementException("No item with key: " + pk);
+      }
+      record(current.getOrganization(), read.consumedCapacity());
+      T changed = change.apply(current);
+      if (!pk.equals(changed.getPk())
+          || !Objects.equals(current.getVersion(), changed.getVersion())) {
+        throw new IllegalArgumentException(
+            "The key and version of item: " + pk + " cannot be changed");
+      }
+      var written = target.putItemWithResponse(
+          PutItemEnhancedRequest.builder(target.tableSchema().itemType().rawClass())
+              .item(changed)
+              .conditionExpression(PK_EXISTS)
+              .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
+              .build());
+      record(changed.getOrganization(), written.consumedCapacity());
+      // The extension wrote the next version; hand it back without another read
+      Long version = current.getVersion();
+      return withVersion.apply(changed, version == null ? 1 : version + 1);
+    }, log);
+  }
+
+  /**
+   * Delete a tenant if the requesting user is one of its admins. This stays a transaction: the
+   * admin check is on another item, which a conditional delete of the tenant cannot see.
+   * Both items have to belong to {@code organization}, which is also charged the capacity.
+   */
+  public Try<List<ConsumedCapacity>> deleteSubscriptionViaOrgAdmin(
+      String pk,
+      String adminPk,
+      String organization,
+      String requestingUser) {
     var request = TransactWriteItemsEnhancedRequest.builder()
         .addConditionCheck(
             adminTable,
             ConditionCheck.builder()
                 .key(Key.builder().partitionValue(adminPk).build())
                 .conditionExpression(Expression.builder()
-                    .expression("contains(#a, :user)")
-                    .expressionNames(Map.of("#a", "admins"))
-                    .expressionValues(Map.of(":user", AttributeValue.fromS(requestingUser)))
+                    .expression("#o = :org AND contains(#a, :user)")
+                    .expressionNames(Map.of("#o", "organization", "#a", "admins"))
+                    .expressionValues(Map.of(
+                        ":org", AttributeValue.fromS(organization),
+                        ":user", AttributeValue.fromS(requestingUser)))
                     .build()
                 )
                 .build()
         )
-        .addDeleteItem(table, Key.builder().partitionValue(pk).build())
-        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .addDeleteItem(table, TransactDeleteItemEnhancedRequest.builder()
+            .key(Key.builder().partitionValue(pk).build())
+            .conditionExpression(Expression.builder()
+                .expression("#o = :org")
+                .expressionNames(Map.of("#o", "organization"))
+                .expressionValues(Map.of(":org", AttributeValue.fromS(organization)))
+                .build())
+            .build())
+        .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
         .build();
     return Try.of(() -> dynamoDbEnhancedClient.transactWriteItemsWithResponse(
             request)
         )
         .map(TransactWriteItemsEnhancedResponse::consumedCapacity)
+        .onSuccess(consumed -> record(organization, consumed))
         .onFailure(err ->
             log.error("Delete subscription request from user: {} for tenant: {} failed",
                 requestingUser,
@@ -137,37 +309,8 @@ public class BillingRepository implements Repository {
       String newEmailAddress,
       String cellPhoneNumber,
       DynamoDbClient dynamoDbClient) {
-    String updateExpression = "SET #phone.#mobile = :cell, #email = :email ADD #admins :new_admins";
-    var keyMap = Map.of("pk",AttributeValue.fromS(adminPk));
-    Map<String, String> expressionNames = new HashMap<>();
-    Map<String, AttributeValue> expressionValues = new HashMap<>();
-
-    if (Objects.nonNull(newAdminsToAppend) &&  !newAdminsToAppend.isEmpty()) {
-      expressionNames.put("#admins", "admins");
-      expressionValues.put(":new_admins", AttributeValue.builder().ss(newAdminsToAppend).build());
-    }
-
-    if (Objects.nonNull(newEmailAddress)) {
-      expressionNames.put("#email", "emailAddress");
-      expressionValues.put(":email", AttributeValue.fromS(newEmailAddress));
-    }
-
-    if (Objects.nonNull(cellPhoneNumber)) {
-      expressionNames.put("#phone", "phoneNumbers");
-      expressionNames.put("#mobile", "MobileNumber");
-      expressionValues.put(":cell", AttributeValue.fromS(cellPhoneNumber));
-    }
-
-    var request = UpdateItemRequest.builder()
-        .tableName(TABLE_NAME)
-        .key(keyMap)
-        .updateExpression(updateExpression)
-        .expressionAttributeNames(expressionNames)
-        .expressionAttributeValues(expressionValues)
-        .build();
-
-    return Try.of(() -> dynamoDbClient.updateItem(request))
-        .map(DynamoDbResponse::responseMetadata)
+    var changes = new AdminUpdate(newAdminsToAppend, null, newEmailAddress, cellPhoneNumber);
+    return updateAdmin(adminPk, changes, dynamoDbClient)
         .onFailure(err -> log.error("Failed to update attributes for item: {}",
             adminPk,
             err));
@@ -178,41 +321,206 @@ public class BillingRepository implements Repository {
       String adminPk,
       Set<String> adminsToRemove,
       DynamoDbClient dynamoDbClient) {
-    Map<String, AttributeValue> keyMap = Map.of("pk",AttributeValue.fromS(adminPk));
-    var updateExpression = "DELETE #admins :old_admins";
-    Map<String, String> expressionNames = new HashMap<>();
-    Map<String, AttributeValue> expressionValues = new HashMap<>();
-
-    if (Objects.nonNull(adminsToRemove) &&  !adminsToRemove.isEmpty()) {
-      expressionNames.put("#admins", "admins");
-      expressionValues.put(":old_admins", AttributeValue.builder().ss(adminsToRemove).build());
+    var changes = new AdminUpdate(null, adminsToRemove, null, null);
+    return updateAdmin(adminPk, changes, dynamoDbClient)
+        .onFailure(th -> log.error("Failed to remove old admins from {}",
+            TABLE_NAME,
+            th)
+        );
+  }
+
+  /**
+   * Read a tenant's item collection with one query and map every item by its entity type.
+   * Items of a type this repository does not know are skipped.
+   *
+   * @param type only items of this type, or null for all of them
+   */
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = SingleTableDesign.TENANT_ITEMS_INDEX
+  )
+  public Try<TenantItemCollection> getTenantItemCollection(
+      String organization,
+      EntityType type,
+      DynamoDbClient dynamoDbClient) {
+    Map<String, String> names = new HashMap<>(Map.of("#org", "organization"));
+    Map<String, AttributeValue> values =
+        new HashMap<>(Map.of(":org", AttributeValue.fromS(organization)));
+    String keyCondition = "#org = :org";
+    if (type != null) {
+      keyCondition += " AND begins_with(#sk, :type)";
+      names.put("#sk", "sk");
+      values.put(":type", AttributeValue.fromS(type.name() + "#"));
     }
+    var request = QueryRequest.builder()
+        .tableName(TABLE_NAME)
+        .indexName(SingleTableDesign.TENANT_ITEMS_INDEX)
+        .keyConditionExpression(keyCondition)
+        .expressionAttributeNames(names)
+        .expressionAttributeValues(values)
+        .build();
+    return Try.of(() -> dynamoDbClient.queryPaginator(request).items().stream()
+            .map(this::toEntity)
+            .flatMap(Optional::stream)
+            .toList())
+        .map(TenantItemCollection::new)
+        .onSuccess(collection -> log.info("Read {} items of tenant: {}",
+            collection.getItems().size(), organization))
+        .onFailure(th -> log.error("Failed to read the items of tenant: {}", organization, th));
+  }
 
-    var request = UpdateItemRequest.builder()
+  /**
+   * Set the collection sort key on tenants and admins written before item collections
+   * existed; without it they are not in {@link SingleTableDesign#TENANT_ITEMS_INDEX} and
+   * {@link #getTenantItemCollection} does not find them. Each item is only written if it still
+   * lacks the key, so running it again is harmless. Items without a type are skipped, as
+   * their collection sort key cannot be told.
+   *
+   * @return the number of items backfilled
+   */
+  @WholeTableAction
+  public Try<Long> backfillCollectionSortKeys(DynamoDbClient dynamoDbClient) {
+    var request = ScanRequest.builder()
         .tableName(TABLE_NAME)
-        .key(keyMap)
-        .updateExpression(updateExpression)
-        .expressionAttributeNames(expressionNames)
-        .expressionAttributeValues(expressionValues)
+        .filterExpression("attribute_exists(#org) AND attribute_not_exists(#sk)")
+        .projectionExpression("#pk, #type")
+        .expressionAttributeNames(Map.of(
+            "#pk", "pk",
+            "#org", "organization",
+            "#sk", "sk",
+            "#type", "type"))
         .build();
+    return Try.of(() -> dynamoDbClient.scanPaginator(request).items().stream()
+            .filter(item -> Try.of(() -> backfillCollectionSortKey(dynamoDbClient, item))
+                .onFailure(ex -> log.warn("Failed to backfill the sort key of: {} due to: {}",
+                    item.get("pk").s(), ex.getMessage()))
+                .getOrElse(false))
+            .count())
+        .onSuccess(count -> log.info("Backfilled the collection sort key on {} items", count))
+        .onFailure(ex -> log.warn(ex.getMessage(), ex));
+  }
 
-    return Try.of(() -> dynamoDbClient.updateItem(request))
-        .map(DynamoDbResponse::responseMetadata)
-        .onFailure(th -> log.error("Failed to remove old admins from {}",
-            TABLE_NAME,
-            th)
-        );
+  private boolean backfillCollectionSortKey(
+      DynamoDbClient dynamoDbClient,
+      Map<String, AttributeValue> item) {
+    String pk = item.get("pk").s();
+    EntityType type = entityType(item.containsKey("type") ? item.get("type").s() : null);
+    if (type == null) {
+      log.warn("Skipping item: {} without a known type", pk);
+      return false;
+    }
+    dynamoDbClient.updateItem(r -> r
+        .tableName(TABLE_NAME)
+        .key(Map.of("pk", AttributeValue.fromS(pk)))
+        .updateExpression("SET #sk = :sk")
+        .conditionExpression("attribute_exists(#pk) AND attribute_not_exists(#sk)")
+        .expressionAttributeNames(Map.of("#pk", "pk", "#sk", "sk"))
+        .expressionAttributeValues(Map.of(
+            ":sk", AttributeValue.fromS(SingleTableDesign.collectionSortKey(type, pk)))));
+    return true;
+  }
+
+  private Optional<SingleTableDesign> toEntity(Map<String, AttributeValue> item) {
+    AttributeValue type = item.get("type");
+    TableSchema<? extends SingleTableDesign> schema = type == null
+        ? null
+        : schemas.get(entityType(type.s()));
+    if (schema == null) {
+      log.warn("Skipping item: {} of unknown type: {}", item.get("pk"), type);
+      return Optional.empty();
+    }
+    return Optional.of(schema.mapToItem(item));
+  }
+
+  private static EntityType entityType(String name) {
+    try {
+      return name == null ? null : EntityType.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static SaasAppInfo inCollection(SaasAppInfo saasAppInfo) {
+    EntityType type = saasAppInfo.getType() == null ? EntityType.TENANT : saasAppInfo.getType();
+    return saasAppInfo.toBuilder()
+        .type(type)
+        .sk(SingleTableDesign.collectionSortKey(type, saasAppInfo.getPk()))
+        .build();
+  }
+
+  private static BillingAdmin inCollection(BillingAdmin billingAdmin) {
+    EntityType type = billingAdmin.getType() == null
+        ? EntityType.TENANT_ADMIN
+        : billingAdmin.getType();
+    return billingAdmin.toBuilder()
+        .type(type)
+        .sk(SingleTableDesign.collectionSortKey(type, billingAdmin.getPk()))
+        .build();
   }
 
   public Try<BillingAdmin> getOrgAdmins(String adminPk) {
     var request = GetItemEnhancedRequest.builder()
         .key(Key.builder().partitionValue(adminPk).build())
         .consistentRead(true)
-        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
         .build();
-    return Try.of(() ->  adminTable.getItem(request))
+    return Try.of(() -> adminTable.getItemWithResponse(request))
+        .onSuccess(resp -> Optional.ofNullable(resp.attributes())
+            .ifPresent(admin -> record(admin.getOrganization(), resp.consumedCapacity())))
+        .map(GetItemEnhancedResponse::attributes)
         .onFailure(th -> log.error("Failed to fetch admin info for key: {}",
             adminPk,
             th));
   }
+
+  private void record(String organization, ConsumedCapacity consumed) {
+    CapacityAccountant accountant = capacityAccountant;
+    if (accountant != null) {
+      accountant.record(organization, consumed);
+    }
+  }
+
+  private void record(String organization, List<ConsumedCapacity> consumed) {
+    CapacityAccountant accountant = capacityAccountant;
+    if (accountant != null) {
+      accountant.record(organization, consumed);
+    }
+  }
+
+  // The updated item is returned whole so the update can be charged to its organization
+  private void record(UpdateItemResponse response) {
+    AttributeValue organization = response.attributes().get("organization");
+    if (organization != null) {
+      record(organization.s(), response.consumedCapacity());
+    }
+  }
+
+  // A single UpdateItem of the attributes that change, only if the admin item exists
+  private Try<DynamoDbResponseMetadata> updateAdmin(
+      String adminPk,
+      AdminUpdate changes,
+      DynamoDbClient dynamoDbClient) {
+    if (changes.isEmpty()) {
+      return Try.failure(new IllegalArgumentException("Nothing to update"));
+    }
+    return Try.of(() -> ADMIN_UPDATE.bind(changes))
+        .map(update -> update.applyTo(UpdateItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("pk", AttributeValue.fromS(adminPk)))
+                .returnConsumedCapacity(ReturnConsumedCapacity.INDEXES)
+                .returnValues(ReturnValue.ALL_NEW))
+            .build())
+        .mapTry(dynamoDbClient::updateItem)
+        .onSuccess(this::record)
+        .map(UpdateItemResponse::responseMetadata);
+  }
+
+  private record AdminUpdate(Set<String> adminsToAdd, Set<String> adminsToRemove,
+                             String emailAddress, String cellPhoneNumber) {
+
+    boolean isEmpty() {
+      return stringSet(adminsToAdd) == null && stringSet(adminsToRemove) == null
+          && emailAddress == null && cellPhoneNumber == null;
+    }
+  }
 }
@@ -5,8 +5,11 @@ import java.util.Set;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Value;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbImmutable;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 
 @DynamoDbImmutable(builder = BillingAdmin.BillingAdminBuilder.class)
 @Value
@@ -14,10 +17,17 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbParti
 public class BillingAdmin implements SingleTableDesign {
   @Getter(onMethod_ = {@DynamoDbPartitionKey})
   String pk;
+  @Getter(onMethod_ = {@DynamoDbSecondaryPartitionKey(indexNames = {TENANT_ITEMS_INDEX})})
   String organization;
+  // {type}#{pk}; set on write, see SingleTableDesign.collectionSortKey
+  @Getter(onMethod_ = {@DynamoDbSecondarySortKey(indexNames = {TENANT_ITEMS_INDEX})})
+  String sk;
   Set<String> admins;
   String emailAddress;
   Map<String, String> phoneNumbers;
   EntityType type;
   long ttl;
+  // Optimistic lock: null until first written, then raised by every write
+  @Getter(onMethod_ = {@DynamoDbVersionAttribute})
+  Long version;
 }
@@ -20,6 +20,9 @@ public class CustomerProfile {
   private final String lastName;
   @Getter(onMethod_ = {@DynamoDbSecondaryPartitionKey(indexNames = {"status-index"})})
   private final Status status;
+  // Write-sharded copy of status ({STATUS}#{N}) so that the index is not limited to two partitions
+  @Getter(onMethod_ = {@DynamoDbSecondaryPartitionKey(indexNames = {"status-shard-index"})})
+  private final String statusShard;
   public enum Status {
     ACTIVE, INACTIVE
   };
@@ -2,6 +2,8 @@ package com.github.learntocode2013.model;
 
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 /**
@@ -10,12 +12,19 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortK
  */
 @DynamoDbBean
 public class EventEntity {
+    public static final String TYPE_INDEX = "event-type-index";
+
     // PK will be constructed: EVENTS#YYYY-MM-DD#SHARD{N}
     private String pk;
 
     // SK will be constructed: {Timestamp}#{EventId}
     private String sk;
+    private String eventId;
+    // Key the shard was derived from; equals eventId unless the caller chose another key
+    private String shardKey;
     private String eventType;
+    // GSI PK will be constructed: {EventType}#YYYY-MM-DD#SHARD{N}, sharded like the table itself
+    private String typeShard;
     private String eventData;
 
     @DynamoDbPartitionKey
@@ -23,12 +32,23 @@ public class EventEntity {
     public void setPk(String pk) { this.pk = pk; }
 
     @DynamoDbSortKey
+    @DynamoDbSecondarySortKey(indexNames = TYPE_INDEX)
     public String getSk() { return sk; }
     public void setSk(String sk) { this.sk = sk; }
 
+    public String getEventId() { return eventId; }
+    public void setEventId(String eventId) { this.eventId = eventId; }
+
+    public String getShardKey() { return shardKey; }
+    public void setShardKey(String shardKey) { this.shardKey = shardKey; }
+
     public String getEventType() { return eventType; }
     public void setEventType(String eventType) { this.eventType = eventType; }
 
+    @DynamoDbSecondaryPartitionKey(indexNames = TYPE_INDEX)
+    public String getTypeShard() { return typeShard; }
+    public void setTypeShard(String typeShard) { this.typeShard = typeShard; }
+
     public String getEventData() { return eventData; }
     public void setEventData(String eventData) { this.eventData = eventData; }
 
@@ -40,7 +60,10 @@ public class EventEntity {
         return "EventEntity{" +
                 "pk='" + pk + '\'' +
                 ", sk='" + sk + '\'' +
+                ", eventId='" + eventId + '\'' +
+                ", shardKey='" + shardKey + '\'' +
                 ", eventType='" + eventType + '\'' +
+                ", typeShard='" + typeShard + '\'' +
                 ", eventData='" + eventData + '\'' +
                 '}';
     }
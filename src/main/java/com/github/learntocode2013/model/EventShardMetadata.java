@@ -0,0 +1,49 @@
+package com.github.learntocode2013.model;
+
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Per-day metadata item stored next to the sharded events.
+ * Records how many shards the day's events were spread over, so readers only query shards that exist.
+ */
+@DynamoDbBean
+public class EventShardMetadata {
+    public static final String SORT_KEY = "SHARD_COUNT";
+
+    // PK will be constructed: EVENTS#YYYY-MM-DD#META
+    private String pk;
+
+    // SK is always SHARD_COUNT
+    private String sk;
+    private int shardCount;
+    private long updatedAt;
+
+    @DynamoDbPartitionKey
+    public String getPk() { return pk; }
+    public void setPk(String pk) { this.pk = pk; }
+
+    @DynamoDbSortKey
+    public String getSk() { return sk; }
+    public void setSk(String sk) { this.sk = sk; }
+
+    public int getShardCount() { return shardCount; }
+    public void setShardCount(int shardCount) { this.shardCount = shardCount; }
+
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+
+    // Default constructor required by the DynamoDbBean annotation
+    public EventShardMetadata() {}
+
+    @Override
+    public String toString() {
+        return "EventShardMetadata{" +
+                "pk='" + pk + '\'' +
+                ", sk='" + sk + '\'' +
+                ", shardCount=" + shardCount +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
@@ -3,8 +3,11 @@ package com.github.learntocode2013.model;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Value;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbImmutable;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 
 @DynamoDbImmutable(builder = SaasAppInfo.SaasAppInfoBuilder.class)
 @Value
@@ -12,11 +15,18 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbParti
 public class SaasAppInfo implements SingleTableDesign {
   @Getter(onMethod_ = {@DynamoDbPartitionKey})
   String pk;
+  @Getter(onMethod_ = {@DynamoDbSecondaryPartitionKey(indexNames = {TENANT_ITEMS_INDEX})})
   String organization;
+  // {type}#{pk}; set on write, see SingleTableDesign.collectionSortKey
+  @Getter(onMethod_ = {@DynamoDbSecondarySortKey(indexNames = {TENANT_ITEMS_INDEX})})
+  String sk;
   SubscriptionType subscriptionType;
   EntityType type;
   String website;
   long ttl;
+  // Checked and raised on every put by the enhanced client's versioned record extension
+  @Getter(onMethod_ = {@DynamoDbVersionAttribute})
+  Long version;
   public enum SubscriptionType {
     ENTERPRISE, PRO, FREE
   }
@@ -1,8 +1,31 @@
 package com.github.learntocode2013.model;
 
 public interface SingleTableDesign {
+  // Item collection of a tenant: partitioned by organization, sorted by type and key
+  String TENANT_ITEMS_INDEX = "gsi_tenant_items";
+
   enum EntityType {
     TENANT,
     TENANT_ADMIN
   }
+
+  EntityType getType();
+
+  String getPk();
+
+  String getOrganization();
+
+  /**
+   * @return the version of the item for optimistic locking, null if it was never written
+   *     with one
+   */
+  Long getVersion();
+
+  /**
+   * @return the sort key of an item in its tenant's collection, {@code {type}#{pk}}, so the
+   *     items of a type are one contiguous, prefix-queryable range
+   */
+  static String collectionSortKey(EntityType type, String pk) {
+    return type.name() + "#" + pk;
+  }
 }
@@ -0,0 +1,68 @@
+package com.github.learntocode2013.model;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Progress of a stream consumer in one shard of a table's stream.
+ */
+@DynamoDbBean
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class StreamCheckpoint {
+  private String streamArn;
+  private String shardId;
+  // Last record handled; null until the first batch of the shard was handled
+  private String sequenceNumber;
+  // Set once the shard was closed and read to its end
+  private Boolean finished;
+  private Instant updatedAt;
+
+  @DynamoDbPartitionKey
+  public String getStreamArn() {
+    return streamArn;
+  }
+
+  public void setStreamArn(String streamArn) {
+    this.streamArn = streamArn;
+  }
+
+  @DynamoDbSortKey
+  public String getShardId() {
+    return shardId;
+  }
+
+  public void setShardId(String shardId) {
+    this.shardId = shardId;
+  }
+
+  public String getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  public void setSequenceNumber(String sequenceNumber) {
+    this.sequenceNumber = sequenceNumber;
+  }
+
+  public Boolean getFinished() {
+    return finished;
+  }
+
+  public void setFinished(Boolean finished) {
+    this.finished = finished;
+  }
+
+  public Instant getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(Instant updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+}
@@ -0,0 +1,29 @@
+package com.github.learntocode2013.model;
+
+import java.util.List;
+import java.util.Optional;
+import lombok.Value;
+
+/**
+ * The items of one tenant read with a single query of its item collection, in sort key order:
+ * grouped by entity type, then by key.
+ */
+@Value
+public class TenantItemCollection {
+  List<SingleTableDesign> items;
+
+  public Optional<SaasAppInfo> tenant() {
+    return ofType(SaasAppInfo.class).stream().findFirst();
+  }
+
+  public List<BillingAdmin> admins() {
+    return ofType(BillingAdmin.class);
+  }
+
+  public <T extends SingleTableDesign> List<T> ofType(Class<T> type) {
+    return items.stream()
+        .filter(type::isInstance)
+        .map(type::cast)
+        .toList();
+  }
+}
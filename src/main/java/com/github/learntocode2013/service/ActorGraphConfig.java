@@ -0,0 +1,31 @@
+package com.github.learntocode2013.service;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Budgets and limits of an {@link ActorGraphTraversal}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ActorGraphConfig {
+  // Actor-to-actor hops a search goes out from the start; each hop is two queries deep
+  @Builder.Default
+  int maxDepth = 3;
+  // Neighbours read per actor or movie; a node with more edges is only partly explored
+  @Builder.Default
+  int maxFanOut = 50;
+  // Read capacity a single search or co-star lookup may consume before it gives up
+  @Builder.Default
+  double maxReadCapacityUnits = 100;
+  // Frontier nodes expanded at the same time
+  @Builder.Default
+  int maxConcurrentExpansions = 8;
+  // Adjacency lists kept in memory across searches, least recently used evicted first
+  @Builder.Default
+  int edgeCacheSize = 10_000;
+  // How long the expansion of one frontier may take
+  @Builder.Default
+  Duration levelDeadline = Duration.ofSeconds(30);
+}
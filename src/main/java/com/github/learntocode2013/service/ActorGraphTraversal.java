@@ -0,0 +1,239 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.MovieAndActor;
+import com.github.learntocode2013.util.ItemCollectionAction;
+import com.github.learntocode2013.util.ShardFanOut;
+import io.vavr.control.Try;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.DoubleAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+/**
+ * Breadth-first traversal of the actor/movie graph stored in MoviesAndActors. The table is an
+ * adjacency list: an actor's partition lists their movies, and {@code gsi_movie_pk} lists the
+ * cast of a movie. A search alternates between the two, one frontier at a time, and expands
+ * the nodes of a frontier concurrently.
+ *
+ * <p>Adjacency lists are cached across searches in a bounded LRU cache, so popular actors and
+ * movies are read once. Every search is bounded by {@link ActorGraphConfig}: the number of
+ * hops, the neighbours read per node and the read capacity consumed by the search.
+ */
+public class ActorGraphTraversal implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(ActorGraphTraversal.class);
+  private static final String TABLE_NAME = "MoviesAndActors";
+  private static final List<String> EDGE_ATTRIBUTES = List.of("actor", "movie");
+  private final DynamoDbTable<MovieAndActor> table;
+  private final ActorGraphConfig config;
+  private final ShardFanOut fanOut;
+  private final Map<Node, List<String>> edgeCache;
+
+  public ActorGraphTraversal(DynamoDbEnhancedClient enhancedClient) {
+    this(enhancedClient, ActorGraphConfig.builder().build());
+  }
+
+  public ActorGraphTraversal(DynamoDbEnhancedClient enhancedClient, ActorGraphConfig config) {
+    if (config.getMaxDepth() < 1 || config.getMaxFanOut() < 1) {
+      throw new IllegalArgumentException("Depth and fan-out must be positive");
+    }
+    this.table = enhancedClient.table(
+        TABLE_NAME,
+        TableSchema.fromImmutableClass(MovieAndActor.class));
+    this.config = config;
+    this.fanOut = ShardFanOut.virtualThreads(
+        config.getMaxConcurrentExpansions(), config.getLevelDeadline());
+    this.edgeCache = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Node, List<String>> eldest) {
+            return size() > config.getEdgeCacheSize();
+          }
+        });
+  }
+
+  /**
+   * @return the actors who played in a movie with the actor, each with the shared movies
+   */
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MovieAndActorService.MOVIE_INDEX
+  )
+  public Try<Map<String, List<String>>> coStarsOf(String actor) {
+    DoubleAdder consumed = new DoubleAdder();
+    return Try.of(() -> {
+          Node start = Node.actor(actor);
+          List<Node> movies = neighbours(start, consumed);
+          Map<Node, List<Node>> casts = expand(movies, consumed);
+          Map<String, List<String>> coStars = new TreeMap<>();
+          casts.forEach((movie, cast) -> cast.stream()
+              .filter(coStar -> !coStar.equals(start))
+              .forEach(coStar -> coStars
+                  .computeIfAbsent(coStar.name(), name -> new ArrayList<>())
+                  .add(movie.name())));
+          return coStars;
+        })
+        .onSuccess(coStars -> log.info("Found {} co-stars of {} for {} RCU",
+            coStars.size(), actor, consumed.sum()))
+        .onFailure(err -> log.error("Failed to find the co-stars of: {}", actor, err));
+  }
+
+  /**
+   * Find a shortest chain of shared movies between two actors.
+   *
+   * @return the chain as actor, movie, actor, ..., actor, or empty if the actors are not
+   *     connected within {@code maxDepth} hops over the neighbours read; a failure if the
+   *     read capacity budget ran out first
+   */
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MovieAndActorService.MOVIE_INDEX
+  )
+  public Try<Optional<List<String>>> shortestPath(String fromActor, String toActor) {
+    DoubleAdder consumed = new DoubleAdder();
+    return Try.of(() -> search(Node.actor(fromActor), Node.actor(toActor), consumed))
+        .onSuccess(path -> log.info("Searched from {} to {} for {} RCU, found: {}",
+            fromActor, toActor, consumed.sum(), path.isPresent()))
+        .onFailure(err -> log.error("Failed to search from {} to {}", fromActor, toActor, err));
+  }
+
+  /**
+   * @return the number of actor-to-actor hops between the actors, or empty if they are not
+   *     connected within {@code maxDepth} hops
+   * @see #shortestPath(String, String)
+   */
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MovieAndActorService.MOVIE_INDEX
+  )
+  public Try<OptionalInt> degreesOfSeparation(String fromActor, String toActor) {
+    return shortestPath(fromActor, toActor)
+        .map(path -> path.map(nodes -> OptionalInt.of(nodes.size() / 2))
+            .orElseGet(OptionalInt::empty));
+  }
+
+  private Optional<List<String>> search(Node from, Node to, DoubleAdder consumed) {
+    if (from.equals(to)) {
+      return Optional.of(List.of(from.name()));
+    }
+    Map<Node, Node> parents = new HashMap<>();
+    parents.put(from, from);
+    List<Node> frontier = List.of(from);
+    // Each actor-to-actor hop is an actor -> movie and a movie -> actor expansion
+    for (int level = 0; level < 2 * config.getMaxDepth() && !frontier.isEmpty(); level++) {
+      List<Node> next = new ArrayList<>();
+      for (Map.Entry<Node, List<Node>> expansion : expand(frontier, consumed).entrySet()) {
+        for (Node neighbour : expansion.getValue()) {
+          if (parents.putIfAbsent(neighbour, expansion.getKey()) != null) {
+            continue;
+          }
+          if (neighbour.equals(to)) {
+            return Optional.of(pathTo(to, parents));
+          }
+          next.add(neighbour);
+        }
+      }
+      frontier = next;
+    }
+    return Optional.empty();
+  }
+
+  private static List<String> pathTo(Node node, Map<Node, Node> parents) {
+    List<String> path = new ArrayList<>();
+    for (Node current = node; ; current = parents.get(current)) {
+      path.add(current.name());
+      if (parents.get(current).equals(current)) {
+        break;
+      }
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  // Neighbours of every frontier node, keyed in frontier order
+  private Map<Node, List<Node>> expand(List<Node> frontier, DoubleAdder consumed) {
+    List<List<Node>> neighbours = fanOut.invokeAll(frontier.stream()
+        .<Callable<List<Node>>>map(node -> () -> neighbours(node, consumed))
+        .toList());
+    Map<Node, List<Node>> expansion = new LinkedHashMap<>();
+    for (int i = 0; i < frontier.size(); i++) {
+      expansion.put(frontier.get(i), neighbours.get(i));
+    }
+    return expansion;
+  }
+
+  private List<Node> neighbours(Node node, DoubleAdder consumed) {
+    List<String> names = edgeCache.get(node);
+    if (names == null) {
+      if (consumed.sum() >= config.getMaxReadCapacityUnits()) {
+        throw new IllegalStateException("Read capacity budget of "
+            + config.getMaxReadCapacityUnits() + " RCU exhausted before expanding " + node);
+      }
+      names = readEdges(node, consumed);
+      edgeCache.put(node, names);
+    }
+    return names.stream()
+        .map(name -> node.movie() ? Node.actor(name) : Node.movie(name))
+        .toList();
+  }
+
+  // A single page of at most maxFanOut keys-only items, from the table or the movie index
+  private List<String> readEdges(Node node, DoubleAdder consumed) {
+    var request = QueryEnhancedRequest.builder()
+        .queryConditional(QueryConditional.keyEqualTo(
+            Key.builder().partitionValue(node.name()).build()))
+        .attributesToProject(EDGE_ATTRIBUTES)
+        .limit(config.getMaxFanOut())
+        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+        .build();
+    Page<MovieAndActor> page = node.movie()
+        ? table.index(MovieAndActorService.MOVIE_INDEX).query(request).iterator().next()
+        : table.query(request).iterator().next();
+    ConsumedCapacity capacity = page.consumedCapacity();
+    if (capacity != null && capacity.capacityUnits() != null) {
+      consumed.add(capacity.capacityUnits());
+    }
+    return page.items().stream()
+        .map(item -> node.movie() ? item.getActor() : item.getMovie())
+        .toList();
+  }
+
+  /**
+   * @return the number of adjacency lists held in the edge cache
+   */
+  public int cachedEdgeLists() {
+    return edgeCache.size();
+  }
+
+  @Override
+  public void close() {
+    fanOut.close();
+  }
+
+  private record Node(String name, boolean movie) {
+    static Node actor(String name) {
+      return new Node(name, false);
+    }
+
+    static Node movie(String name) {
+      return new Node(name, true);
+    }
+  }
+}
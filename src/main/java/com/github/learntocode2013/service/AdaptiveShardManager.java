@@ -0,0 +1,186 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.EventShardMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the shard count of each day of sharded events.
+ * The count lives in a metadata item per day and only ever grows: it is doubled (up to the
+ * configured maximum) when the observed write rate or the number of throttled writes crosses
+ * the configured thresholds. Since a day's shards are numbered from zero, raising the count
+ * keeps every earlier shard readable.
+ */
+public class AdaptiveShardManager {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveShardManager.class);
+    private final DynamoDbTable<EventShardMetadata> metadataTable;
+    private final AdaptiveShardingConfig config;
+    private final Map<LocalDate, DayState> days = new ConcurrentHashMap<>();
+
+    /**
+     * @param metadataTable the Events table mapped to the metadata item
+     * @param config thresholds used to decide when a day is re-sharded
+     */
+    public AdaptiveShardManager(DynamoDbTable<EventShardMetadata> metadataTable,
+                                AdaptiveShardingConfig config) {
+        if (config.getMinShards() < 1 || config.getMaxShards() < config.getMinShards()) {
+            throw new IllegalArgumentException("Invalid shard bounds: " + config);
+        }
+        this.metadataTable = metadataTable;
+        this.config = config;
+    }
+
+    /**
+     * @return the shard count a day starts with
+     */
+    public int minShards() {
+        return config.getMinShards();
+    }
+
+    /**
+     * Get the shard count of a day, reading the metadata item when the cached value expired.
+     *
+     * @param date the day
+     * @return the number of shards the day's events are spread over
+     */
+    public int shardCountFor(LocalDate date) {
+        DayState state = days.computeIfAbsent(date, d -> new DayState());
+        if (System.nanoTime() - state.loadedAtNanos > config.getMetadataCacheTtl().toNanos()
+                || state.shardCount == 0) {
+            reload(date, state);
+        }
+        return state.shardCount;
+    }
+
+    /**
+     * Get the shard count of a day as the metadata item holds it right now. Reads that have
+     * to see every shard use this instead of {@link #shardCountFor(LocalDate)}, whose cached
+     * count can miss shards another process added within the last {@code metadataCacheTtl}.
+     *
+     * @param date the day
+     * @return the number of shards the day's events are spread over
+     */
+    public int currentShardCountFor(LocalDate date) {
+        DayState state = days.computeIfAbsent(date, d -> new DayState());
+        reload(date, state);
+        return state.shardCount;
+    }
+
+    /**
+     * Record a successful write, raising the day's shard count when the write rate
+     * of the last window exceeded what the current shards are expected to absorb.
+     *
+     * @param date the day the event was written to
+     */
+    public void recordWrite(LocalDate date) {
+        DayState state = days.computeIfAbsent(date, d -> new DayState());
+        state.writes.increment();
+        long now = System.currentTimeMillis();
+        long windowStart = state.windowStartMillis.get();
+        long elapsed = now - windowStart;
+        if (elapsed < 1000 || !state.windowStartMillis.compareAndSet(windowStart, now)) {
+            return;
+        }
+        double writesPerSecond = state.writes.sumThenReset() * 1000.0 / elapsed;
+        int shardCount = shardCountFor(date);
+        if (writesPerSecond > (double) config.getWritesPerShardPerSecond() * shardCount) {
+            raise(date, state, String.format("write rate of %.1f/s", writesPerSecond));
+        }
+    }
+
+    /**
+     * Record a write that was rejected with a throttling error.
+     *
+     * @param date the day the event was written to
+     */
+    public void recordThrottle(LocalDate date) {
+        DayState state = days.computeIfAbsent(date, d -> new DayState());
+        if (state.throttles.incrementAndGet() >= config.getThrottlesBeforeRaise()) {
+            state.throttles.set(0);
+            raise(date, state, "throttled writes");
+        }
+    }
+
+    private void raise(LocalDate date, DayState state, String reason) {
+        // One raise per day at a time from this instance; others re-read the metadata item
+        if (!state.raising.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int current = shardCountFor(date);
+            if (current >= config.getMaxShards()) {
+                log.warn("Shard count for {} is already at its maximum of {}", date, current);
+                return;
+            }
+            int target = Math.min(config.getMaxShards(), current * 2);
+            EventShardMetadata metadata = new EventShardMetadata();
+            metadata.setPk(metadataKey(date));
+            metadata.setSk(EventShardMetadata.SORT_KEY);
+            metadata.setShardCount(target);
+            metadata.setUpdatedAt(System.currentTimeMillis());
+            // Never lower a count another writer already raised
+            var request = PutItemEnhancedRequest.builder(EventShardMetadata.class)
+                    .item(metadata)
+                    .conditionExpression(Expression.builder()
+                            .expression("attribute_not_exists(#count) OR #count < :target")
+                            .expressionNames(Map.of("#count", "shardCount"))
+                            .expressionValues(Map.of(":target",
+                                    AttributeValue.fromN(Integer.toString(target))))
+                            .build())
+                    .build();
+            metadataTable.putItem(request);
+            state.shardCount = target;
+            state.loadedAtNanos = System.nanoTime();
+            log.info("Raised shard count for {} from {} to {} due to {}", date, current, target,
+                    reason);
+        } catch (ConditionalCheckFailedException e) {
+            log.info("Shard count for {} was already raised by another writer", date);
+            reload(date, state);
+        } finally {
+            state.raising.set(false);
+        }
+    }
+
+    private void reload(LocalDate date, DayState state) {
+        // Consistent, so a count raised by another process is seen as soon as it is written
+        EventShardMetadata metadata = metadataTable.getItem(GetItemEnhancedRequest.builder()
+                .key(Key.builder()
+                        .partitionValue(metadataKey(date))
+                        .sortValue(EventShardMetadata.SORT_KEY)
+                        .build())
+                .consistentRead(true)
+                .build());
+        int stored = metadata == null ? 0 : metadata.getShardCount();
+        state.shardCount = Math.max(config.getMinShards(), Math.max(stored, state.shardCount));
+        state.loadedAtNanos = System.nanoTime();
+    }
+
+    static String metadataKey(LocalDate date) {
+        return String.format("EVENTS#%s#META", date.format(DateTimeFormatter.ISO_DATE));
+    }
+
+    private static final class DayState {
+        volatile int shardCount;
+        volatile long loadedAtNanos;
+        final LongAdder writes = new LongAdder();
+        final AtomicLong windowStartMillis = new AtomicLong(System.currentTimeMillis());
+        final AtomicInteger throttles = new AtomicInteger();
+        final AtomicBoolean raising = new AtomicBoolean();
+    }
+}
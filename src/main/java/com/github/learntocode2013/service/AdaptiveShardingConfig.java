@@ -0,0 +1,28 @@
+package com.github.learntocode2013.service;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Thresholds for {@link AdaptiveShardManager}.
+ * Rates are measured per writer instance, so thresholds should be sized per process.
+ */
+@Value
+@Builder(toBuilder = true)
+public class AdaptiveShardingConfig {
+    // Shard count of a day that has no metadata item yet
+    @Builder.Default
+    int minShards = 1;
+    @Builder.Default
+    int maxShards = 64;
+    // Writes per second a single shard is expected to absorb before the day is re-sharded
+    @Builder.Default
+    long writesPerShardPerSecond = 500;
+    // Throttled writes seen for a day before the day is re-sharded
+    @Builder.Default
+    int throttlesBeforeRaise = 3;
+    // How long writes use a day's cached shard count; reads always re-read the metadata item
+    @Builder.Default
+    Duration metadataCacheTtl = Duration.ofSeconds(30);
+}
@@ -5,19 +5,41 @@ import static java.util.Objects.isNull;
 import com.github.learntocode2013.data.BillingRepository;
 import com.github.learntocode2013.model.BillingAdmin;
 import com.github.learntocode2013.model.SaasAppInfo;
+import com.github.learntocode2013.model.SingleTableDesign;
+import com.github.learntocode2013.model.SingleTableDesign.EntityType;
+import com.github.learntocode2013.model.TenantItemCollection;
+import com.github.learntocode2013.service.OnboardingResult.Outcome;
 import com.github.learntocode2013.util.ItemBasedAction;
+import com.github.learntocode2013.util.ItemCollectionAction;
+import com.github.learntocode2013.util.WholeTableAction;
 import io.vavr.control.Try;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedResponse;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbResponseMetadata;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 public class BillingService {
   private static final Logger log = LoggerFactory.getLogger(BillingService.class);
+  public static final int DEFAULT_ONBOARDING_CONCURRENCY = 16;
+  private static final Duration ONBOARDING_DEADLINE = Duration.ofMinutes(5);
   private final BillingRepository repository;
 
   public BillingService(BillingRepository repository) {
@@ -43,16 +65,123 @@ public class BillingService {
     return repository.saveItem(billingAdmin);
   }
 
+  @ItemBasedAction
+  public Try<List<OnboardingResult>> onboardTenants(List<TenantOnboarding> onboardings) {
+    return onboardTenants(onboardings, DEFAULT_ONBOARDING_CONCURRENCY);
+  }
+
+  @ItemBasedAction
+  public Try<List<OnboardingResult>> onboardTenants(
+      List<TenantOnboarding> onboardings,
+      int maxConcurrency) {
+    return onboardTenants(onboardings, maxConcurrency, ONBOARDING_DEADLINE);
+  }
+
+  /**
+   * Onboard many tenants, each tenant and its admin in one transaction, at most
+   * {@code maxConcurrency} at a time. A tenant that fails does not affect the others.
+   *
+   * <p>The idempotency token is derived from the tenant and admin keys, so running the same
+   * batch again within ten minutes, e.g. after a timeout, reports the tenants the first run
+   * onboarded as onboarded without writing them twice.
+   *
+   * @param deadline how long the whole batch may take; onboardings still running or waiting
+   *     then are cancelled and reported as {@link Outcome#UNKNOWN}, the others keep their outcome
+   * @return one result per onboarding, in the order given
+   */
+  @ItemBasedAction
+  public Try<List<OnboardingResult>> onboardTenants(
+      List<TenantOnboarding> onboardings,
+      int maxConcurrency,
+      Duration deadline) {
+    if (isNull(onboardings) || maxConcurrency < 1 || isNull(deadline)) {
+      return Try.failure(new IllegalArgumentException("Cannot onboard tenants with invalid input"));
+    }
+    log.info("Onboarding {} tenants, {} at a time", onboardings.size(), maxConcurrency);
+    return Try.of(() -> {
+          long deadlineNanos = System.nanoTime() + deadline.toNanos();
+          Semaphore permits = new Semaphore(maxConcurrency);
+          ExecutorService executor = Executors.newThreadPerTaskExecutor(
+              Thread.ofVirtual().name("onboarding-", 0).factory());
+          try {
+            List<Future<OnboardingResult>> futures = onboardings.stream()
+                .map(onboarding -> executor.submit(() -> {
+                  permits.acquire();
+                  try {
+                    return onboard(onboarding);
+                  } finally {
+                    permits.release();
+                  }
+                }))
+                .toList();
+            List<OnboardingResult> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+              results.add(awaitOnboarding(onboardings.get(i), futures.get(i), deadlineNanos));
+            }
+            return results;
+          } finally {
+            executor.shutdownNow();
+          }
+        })
+        .onSuccess(results -> log.info("Onboarded {} of {} tenants",
+            results.stream().filter(OnboardingResult::isOnboarded).count(), results.size()));
+  }
+
+  private static OnboardingResult awaitOnboarding(TenantOnboarding onboarding,
+      Future<OnboardingResult> future, long deadlineNanos) {
+    String tenantPk = isNull(onboarding) || isNull(onboarding.getTenant())
+        ? null : onboarding.getTenant().getPk();
+    try {
+      return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      log.warn("Onboarding of tenant {} did not finish in time", tenantPk);
+      return new OnboardingResult(tenantPk, Outcome.UNKNOWN, "Did not finish in time");
+    } catch (InterruptedException e) {
+      // Keeps the flag, so the onboardings after this one are reported without waiting
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      return new OnboardingResult(tenantPk, Outcome.UNKNOWN, "Interrupted");
+    } catch (ExecutionException e) {
+      return new OnboardingResult(tenantPk, Outcome.FAILED, e.getCause().getMessage());
+    }
+  }
+
+  private OnboardingResult onboard(TenantOnboarding onboarding) {
+    var tenant = isNull(onboarding) ? null : onboarding.getTenant();
+    var admin = isNull(onboarding) ? null : onboarding.getAdmin();
+    if (isNull(tenant) || isNull(admin) || isNull(tenant.getPk()) || isNull(admin.getPk())
+        || !Objects.equals(tenant.getOrganization(), admin.getOrganization())) {
+      return new OnboardingResult(isNull(tenant) ? null : tenant.getPk(), Outcome.FAILED,
+          "A tenant and an admin of the same organization are required");
+    }
+    String token = UUID.nameUUIDFromBytes((tenant.getPk() + "|" + admin.getPk())
+        .getBytes(StandardCharsets.UTF_8)).toString();
+    return repository.saveTenantWithAdmin(tenant, admin, token)
+        .map(consumed -> new OnboardingResult(tenant.getPk(), Outcome.ONBOARDED, null))
+        .recover(TransactionCanceledException.class, ex -> alreadyExists(ex)
+            ? new OnboardingResult(tenant.getPk(), Outcome.ALREADY_EXISTS, null)
+            : new OnboardingResult(tenant.getPk(), Outcome.FAILED, ex.getMessage()))
+        .recover(ex -> new OnboardingResult(tenant.getPk(), Outcome.FAILED, ex.getMessage()))
+        .get();
+  }
+
+  private static boolean alreadyExists(TransactionCanceledException ex) {
+    return ex.hasCancellationReasons() && ex.cancellationReasons().stream()
+        .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()));
+  }
+
   @ItemBasedAction
   public Try<List<ConsumedCapacity>> deleteSubscriptionViaOrgAdmin(
       String pk,
       String adminPk,
+      String organization,
       String requestingUser) {
-    if (isNull(pk) ||  isNull(adminPk) || isNull(requestingUser)) {
+    if (isNull(pk) ||  isNull(adminPk) || isNull(organization) || isNull(requestingUser)) {
       return Try.failure(new IllegalArgumentException("Cannot delete tenant with invalid input"));
     }
     log.info("Received a tenant deletion request from : {}", requestingUser);
-    return repository.deleteSubscriptionViaOrgAdmin(pk, adminPk, requestingUser);
+    return repository.deleteSubscriptionViaOrgAdmin(pk, adminPk, organization, requestingUser);
   }
 
   @ItemBasedAction
@@ -90,6 +219,26 @@ public class BillingService {
     return repository.removeAdminsForOrg(adminPk, adminsToRemove, dynamoDbClient);
   }
 
+  @ItemBasedAction
+  public Try<SaasAppInfo> updateTenant(String pk, UnaryOperator<SaasAppInfo> change) {
+    if (isNull(pk) || isNull(change)) {
+      return Try.failure(new IllegalArgumentException("Cannot update tenant with invalid input"));
+    }
+    log.info("Received a tenant update request for: {}", pk);
+    return repository.updateTenant(pk, change);
+  }
+
+  @ItemBasedAction
+  public Try<BillingAdmin> updateTenantAdmin(String adminPk, UnaryOperator<BillingAdmin> change) {
+    if (isNull(adminPk) || isNull(change)) {
+      return Try.failure(
+          new IllegalArgumentException("Cannot update tenant admin with invalid input")
+      );
+    }
+    log.info("Received a tenant admin update request for: {}", adminPk);
+    return repository.updateAdmin(adminPk, change);
+  }
+
   @ItemBasedAction
   public Try<BillingAdmin> getOrgAdmins(String adminPk) {
     if (isNull(adminPk)) {
@@ -100,4 +249,32 @@ public class BillingService {
     log.info("Received a request to fetch tenant admins for: {}", adminPk);
     return repository.getOrgAdmins(adminPk);
   }
+
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = SingleTableDesign.TENANT_ITEMS_INDEX
+  )
+  public Try<TenantItemCollection> getTenantItemCollection(
+      String organization,
+      EntityType type,
+      DynamoDbClient dynamoDbClient) {
+    if (isNull(organization) || isNull(dynamoDbClient)) {
+      return Try.failure(
+          new IllegalArgumentException("Cannot retrieve tenant items with invalid input")
+      );
+    }
+    log.info("Received a request to fetch the items of tenant: {}", organization);
+    return repository.getTenantItemCollection(organization, type, dynamoDbClient);
+  }
+
+  @WholeTableAction
+  public Try<Long> backfillCollectionSortKeys(DynamoDbClient dynamoDbClient) {
+    if (isNull(dynamoDbClient)) {
+      return Try.failure(
+          new IllegalArgumentException("Cannot backfill tenant items with invalid input")
+      );
+    }
+    log.info("Received a request to backfill the collection sort key of tenant items");
+    return repository.backfillCollectionSortKeys(dynamoDbClient);
+  }
 }
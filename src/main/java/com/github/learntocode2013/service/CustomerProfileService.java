@@ -6,17 +6,24 @@ import static com.github.learntocode2013.model.CustomerProfile.Status.INACTIVE;
 import com.github.learntocode2013.model.CustomerProfile;
 import com.github.learntocode2013.util.ItemBasedAction;
 import com.github.learntocode2013.util.ItemCollectionAction;
+import com.github.learntocode2013.util.IndexSpec;
+import com.github.learntocode2013.util.ItemCount;
 import com.github.learntocode2013.util.Operations;
+import com.github.learntocode2013.util.ShardFanOut;
+import com.github.learntocode2013.util.TableSpec;
 import com.github.learntocode2013.util.WholeTableAction;
 import io.vavr.control.Try;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
@@ -36,25 +43,69 @@ import software.amazon.awssdk.enhanced.dynamodb.model.TransactGetItemsEnhancedRe
 import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 
 public class CustomerProfileService {
   private static final Logger log = LoggerFactory.getLogger(CustomerProfileService.class);
-  private static final String TABLE_NAME = "CustomerProfiles";
+  public static final String TABLE_NAME = "CustomerProfiles";
   private static final int MAX_BATCH_SIZE_IN_TRANSACTION = 10;
+  private static final String STATUS_SHARD_INDEX = "status-shard-index";
+  public static final int DEFAULT_STATUS_SHARD_COUNT = 8;
+  // Expressions are immutable, so the constant ones are built once and shared
+  private static final Expression ID_NOT_EXISTS = Expression.builder()
+      .expression("attribute_not_exists(id)")
+      .build();
+  private static final Expression IS_ACTIVE = Expression.builder()
+      .expression("#status = :status")
+      .expressionNames(Map.of("#status", "status"))
+      .expressionValues(Map.of(":status", AttributeValue.fromS(ACTIVE.name())))
+      .build();
+  // Both status lookups return whole profiles, so the indexes project every attribute
+  static final TableSpec TABLE_SPEC = TableSpec.builder()
+      .globalIndex(IndexSpec.all("status-index"))
+      .globalIndex(IndexSpec.all(STATUS_SHARD_INDEX))
+      .build();
+  // Shard queries block on I/O, so they run on virtual threads instead of the common pool.
+  // Shared by all instances, so no instance leaves an executor behind.
+  private static final ShardFanOut SHARD_FAN_OUT =
+      ShardFanOut.virtualThreads(16, Duration.ofSeconds(30));
   private final DynamoDbEnhancedClient enhancedClient;
   private final DynamoDbTable<CustomerProfile> table;
+  private final int statusShardCount;
 
   public CustomerProfileService(DynamoDbEnhancedClient enhancedClient) {
+    this(enhancedClient, DEFAULT_STATUS_SHARD_COUNT);
+  }
+
+  /**
+   * @param statusShardCount the number of status-shard-index partitions per status. It is part
+   *     of the table's data layout and is not stored with it: every service writing or reading
+   *     the table has to use the same count, and it cannot be changed once profiles were written,
+   *     since profiles on a shard beyond the count are never queried and {@link
+   *     #backfillStatusShards()} only assigns shards to profiles that have none.
+   */
+  public CustomerProfileService(DynamoDbEnhancedClient enhancedClient, int statusShardCount) {
+    if (statusShardCount < 1) {
+      throw new IllegalArgumentException("Status shard count must be at least 1");
+    }
     this.enhancedClient = enhancedClient;
+    this.statusShardCount = statusShardCount;
     this.table = enhancedClient.table(
         TABLE_NAME,
         TableSchema.fromImmutableClass(CustomerProfile.class));
   }
 
   public Try<DescribeTableEnhancedResponse> createTableIfNotExists() {
-    return Operations.createTableIfNotExists(table, TABLE_NAME, log);
+    return Operations.createTableIfNotExists(table, TABLE_NAME, TABLE_SPEC, log);
+  }
+
+  @WholeTableAction
+  public Try<List<String>> reconcileTable(DynamoDbClient dynamoDbClient) {
+    return Operations.reconcileTable(dynamoDbClient, table, TABLE_SPEC, log);
   }
 
   // We do not want a customer profile entry to be overwritten ever once created;
@@ -62,8 +113,8 @@ public class CustomerProfileService {
   @ItemBasedAction
   public Try<Void> createItem(CustomerProfile item) {
     var createRequest = PutItemEnhancedRequest.builder(CustomerProfile.class)
-        .item(item)
-        .conditionExpression(existenceCondition())
+        .item(withStatusShard(item))
+        .conditionExpression(ID_NOT_EXISTS)
         .build();
     return Try.run(() -> table.putItem(createRequest))
         .onFailure(ex -> {
@@ -76,10 +127,18 @@ public class CustomerProfileService {
         });
   }
 
-  private Expression existenceCondition() {
-    return Expression.builder()
-        .expression("attribute_not_exists(id)")
-        .build();
+  // The shard is derived from the id, so every write of the same profile lands on the same
+  // status-shard-index partition and a status change simply moves it to the sibling shard.
+  private CustomerProfile withStatusShard(CustomerProfile item) {
+    if (Objects.isNull(item.getStatus())) {
+      return item.toBuilder().statusShard(null).build();
+    }
+    int shard = Math.floorMod(item.getId().hashCode(), statusShardCount);
+    return item.toBuilder().statusShard(statusShardKey(item.getStatus(), shard)).build();
+  }
+
+  private static String statusShardKey(CustomerProfile.Status status, int shard) {
+    return status.name() + "#" + shard;
   }
 
   @ItemBasedAction
@@ -90,7 +149,7 @@ public class CustomerProfileService {
 
   @ItemBasedAction
   public Try<CustomerProfile> updateItem(CustomerProfile updatedItem) {
-    return Try.of(() -> table.updateItem(updatedItem))
+    return Try.of(() -> table.updateItem(withStatusShard(updatedItem)))
         .onFailure(ex -> log.warn(ex.getMessage(), ex));
   }
 
@@ -156,15 +215,104 @@ public class CustomerProfileService {
         }).onFailure(ex -> log.warn(ex.getMessage(), ex));
   }
 
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = "status-index"
+  )
+  public Try<Long> countProfilesWithStatus(DynamoDbClient dynamoDbClient,
+      CustomerProfile.Status status) {
+    var request = QueryRequest.builder()
+        .tableName(TABLE_NAME)
+        .indexName("status-index")
+        .keyConditionExpression("#status = :status")
+        .expressionAttributeNames(Map.of("#status", "status"))
+        .expressionAttributeValues(Map.of(":status", AttributeValue.fromS(status.name())))
+        .build();
+    return Try.of(() -> Operations.countItems(dynamoDbClient, request).getCount())
+        .onSuccess(count -> log.info("Counted {} customer profiles with status {}",
+            count, status.name()))
+        .onFailure(ex -> log.warn(ex.getMessage(), ex));
+  }
+
+  // Counts every profile, or those with the status, with a parallel COUNT scan. Without a
+  // status this is the only exact count; with one, countProfilesWithStatus reads far less.
   @WholeTableAction
-  public Try<List<CustomerProfile>> softDeleteAllItems() {
+  public Try<ItemCount> countProfiles(DynamoDbClient dynamoDbClient,
+      CustomerProfile.Status status, int segments) {
+    var request = ScanRequest.builder().tableName(TABLE_NAME);
+    if (status != null) {
+      request.filterExpression("#status = :status")
+          .expressionAttributeNames(Map.of("#status", "status"))
+          .expressionAttributeValues(Map.of(":status", AttributeValue.fromS(status.name())));
+    }
+    return Try.of(() -> Operations.countItems(dynamoDbClient, request.build(), segments))
+        .onSuccess(count -> log.info("Counted {} of {} customer profiles with status {}",
+            count.getCount(), count.getScannedCount(), status))
+        .onFailure(ex -> log.warn(ex.getMessage(), ex));
+  }
+
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = STATUS_SHARD_INDEX
+  )
+  public Try<List<CustomerProfile>> getAllProfilesWithStatusAcrossShards(
+      CustomerProfile.Status status) {
+    var index = table.index(STATUS_SHARD_INDEX);
+    log.info("Querying customers with status {} across {} shards of {}",
+        status.name(), statusShardCount, STATUS_SHARD_INDEX);
+    return Try.of(() -> SHARD_FAN_OUT.invokeAll(IntStream.range(0, statusShardCount)
+                .mapToObj(shard -> statusShardKey(status, shard))
+                .<Callable<List<CustomerProfile>>>map(shardKey -> () -> index
+                    .query(QueryConditional.keyEqualTo(
+                        Key.builder().partitionValue(shardKey).build()))
+                    .stream()
+                    .flatMap(page -> page.items().stream())
+                    .toList())
+                .toList())
+            .stream()
+            .flatMap(List::stream)
+            .toList())
+        .onSuccess(items -> log.info("Found {} customer profiles with status {}",
+            items.size(), status.name()))
+        .onFailure(ex -> log.warn(ex.getMessage(), ex));
+  }
+
+  // Migration for profiles written before status-shard-index existed. Safe to re-run: only items
+  // without a shard key are touched and each update is conditioned on the status it was read with.
+  @WholeTableAction
+  public Try<Long> backfillStatusShards() {
     var request = ScanEnhancedRequest.builder()
         .filterExpression(Expression.builder()
-            .expression("#status = :val")
-            .expressionNames(Map.of("#status", "status"))
-            .expressionValues(Map.of(":val", AttributeValue.fromS(ACTIVE.name())))
+            .expression("attribute_exists(#status) AND attribute_not_exists(#statusShard)")
+            .expressionNames(Map.of(
+                "#status", "status",
+                "#statusShard", "statusShard"))
             .build())
         .build();
+    return Try.of(() -> table.scan(request).items().stream()
+            .map(item -> Try.of(() -> table.updateItem(
+                    UpdateItemEnhancedRequest.builder(CustomerProfile.class)
+                        .item(withStatusShard(item))
+                        .conditionExpression(Expression.builder()
+                            .expression("attribute_exists(id) AND #status = :status")
+                            .expressionNames(Map.of("#status", "status"))
+                            .expressionValues(Map.of(
+                                ":status", AttributeValue.fromS(item.getStatus().name())))
+                            .build())
+                        .build()))
+                .onFailure(ex -> log.warn("Failed to backfill status shard for: {} due to: {}",
+                    item.getId(), ex.getMessage())))
+            .filter(Try::isSuccess)
+            .count())
+        .onSuccess(count -> log.info("Backfilled status shard on {} customer profiles", count))
+        .onFailure(ex -> log.warn(ex.getMessage(), ex));
+  }
+
+  @WholeTableAction
+  public Try<List<CustomerProfile>> softDeleteAllItems() {
+    var request = ScanEnhancedRequest.builder()
+        .filterExpression(IS_ACTIVE)
+        .build();
 
     return Try.of(() -> table.scan(request))
         .map(pageIterable -> {
@@ -172,17 +320,12 @@ public class CustomerProfileService {
               .flatMap(page -> page.items().stream())
               .toList();
           log.info("Found {} active customer profiles items for soft delete", items.size());
-          var conditionExpression = Expression.builder()
-              .expression("#status = :activeStatus")
-              .expressionNames(Map.of("#status", "status"))
-              .expressionValues(Map.of(":activeStatus", AttributeValue.fromS(ACTIVE.name())))
-              .build();
           List<CustomerProfile> updatedProfiles = new ArrayList<>();
           for (var item : items) {
-            var updatedItem = item.toBuilder().status(INACTIVE).build();
+            var updatedItem = withStatusShard(item.toBuilder().status(INACTIVE).build());
             var updateRequest = UpdateItemEnhancedRequest.builder(CustomerProfile.class)
                 .item(updatedItem)
-                .conditionExpression(conditionExpression)
+                .conditionExpression(IS_ACTIVE)
                 .build();
             Try.of(() -> {
                   var resp = table.updateItem(updateRequest);
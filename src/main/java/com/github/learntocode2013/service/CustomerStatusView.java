@@ -0,0 +1,247 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.CustomerProfile;
+import com.github.learntocode2013.model.CustomerProfile.Status;
+import com.github.learntocode2013.stream.InMemoryCheckpointStore;
+import com.github.learntocode2013.stream.StreamConsumer;
+import com.github.learntocode2013.stream.StreamConsumerConfig;
+import com.github.learntocode2013.stream.StreamRecordHandler;
+import com.github.learntocode2013.util.WholeTableAction;
+import io.vavr.control.Try;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * In-memory view of which customer has which status, built once from a parallel scan of
+ * CustomerProfiles and then kept current from the table's stream. Counts, membership checks
+ * and per-status member sets are answered from memory.
+ *
+ * <p>The stream is started before the scan. Records that arrive while the scan runs are held
+ * back and applied after it, in stream order, so a change the scan missed or read in an older
+ * state still ends up in the view. Records older than the scan are skipped, since the scan
+ * already reflects them. Each record carries the full new image, so applying a record twice
+ * is harmless.
+ */
+public class CustomerStatusView implements StreamRecordHandler, AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(CustomerStatusView.class);
+  // Records created this long before the scan started are already reflected in it
+  private static final Duration SCAN_OVERLAP = Duration.ofMinutes(1);
+  private final DynamoDbTable<CustomerProfile> table;
+  private final DynamoDbClient dynamoDbClient;
+  private final DynamoDbStreamsClient streamsClient;
+  private final StreamConsumerConfig consumerConfig;
+  private final Map<String, Status> statusById = new ConcurrentHashMap<>();
+  private final Map<Status, Set<String>> membersByStatus = new EnumMap<>(Status.class);
+  private final Map<Status, AtomicLong> countByStatus = new EnumMap<>(Status.class);
+  // Guards the hand-over from bootstrap to live updates
+  private final Object bootstrapLock = new Object();
+  private final List<Record> heldBack = new ArrayList<>();
+  private volatile boolean bootstrapped;
+  private volatile Instant scanStartedAt;
+  private volatile Duration replicationLag = Duration.ZERO;
+  private volatile Instant lastChangeAt;
+  private StreamConsumer consumer;
+
+  public CustomerStatusView(DynamoDbEnhancedClient enhancedClient, DynamoDbClient dynamoDbClient,
+      DynamoDbStreamsClient streamsClient) {
+    this(enhancedClient, dynamoDbClient, streamsClient, StreamConsumerConfig.builder().build());
+  }
+
+  public CustomerStatusView(DynamoDbEnhancedClient enhancedClient, DynamoDbClient dynamoDbClient,
+      DynamoDbStreamsClient streamsClient, StreamConsumerConfig consumerConfig) {
+    this.table = enhancedClient.table(
+        CustomerProfileService.TABLE_NAME,
+        TableSchema.fromImmutableClass(CustomerProfile.class));
+    this.dynamoDbClient = dynamoDbClient;
+    this.streamsClient = streamsClient;
+    this.consumerConfig = consumerConfig;
+    for (Status status : Status.values()) {
+      membersByStatus.put(status, ConcurrentHashMap.newKeySet());
+      countByStatus.put(status, new AtomicLong());
+    }
+  }
+
+  /**
+   * Enable the table's stream, start following it and load the current state with a
+   * parallel scan. The view answers queries once this returns successfully. Fails if the
+   * table already has a stream whose records carry no new image. On failure the consumer is
+   * stopped and whatever was loaded is dropped, so {@code start} can be called again.
+   *
+   * @param scanSegments the number of scan segments read in parallel
+   * @return the number of profiles loaded by the scan
+   */
+  @WholeTableAction
+  public Try<Long> start(int scanSegments) {
+    return Try.of(() -> {
+          String streamArn = StreamConsumer.enableStream(dynamoDbClient,
+              CustomerProfileService.TABLE_NAME, StreamViewType.NEW_IMAGE);
+          // Checkpoints do not outlive the view: a new view bootstraps from a new scan
+          consumer = new StreamConsumer(streamsClient, streamArn, this,
+              new InMemoryCheckpointStore(), consumerConfig);
+          scanStartedAt = Instant.now();
+          consumer.start();
+          long loaded = scan(scanSegments);
+          synchronized (bootstrapLock) {
+            heldBack.forEach(this::apply);
+            log.info("Applied {} changes made while the scan ran", heldBack.size());
+            heldBack.clear();
+            bootstrapped = true;
+          }
+          return loaded;
+        })
+        .onSuccess(loaded -> log.info("Customer status view loaded {} profiles", loaded))
+        .onFailure(ex -> {
+          log.warn(ex.getMessage(), ex);
+          reset();
+        });
+  }
+
+  // Stops a consumer that would otherwise keep holding back records nobody applies
+  private void reset() {
+    close();
+    consumer = null;
+    synchronized (bootstrapLock) {
+      heldBack.clear();
+      statusById.keySet().forEach(id -> update(id, null));
+    }
+  }
+
+  private long scan(int scanSegments) {
+    try (ExecutorService scanners = Executors.newVirtualThreadPerTaskExecutor()) {
+      return IntStream.range(0, scanSegments)
+          .mapToObj(segment -> CompletableFuture.supplyAsync(() -> table
+              .scan(ScanEnhancedRequest.builder()
+                  .segment(segment)
+                  .totalSegments(scanSegments)
+                  .build())
+              .items()
+              .stream()
+              .peek(profile -> update(profile.getId(), profile.getStatus()))
+              .count(), scanners))
+          .toList()
+          .stream()
+          .mapToLong(CompletableFuture::join)
+          .sum();
+    }
+  }
+
+  @Override
+  public void handle(String shardId, List<Record> records) {
+    if (!bootstrapped) {
+      synchronized (bootstrapLock) {
+        if (!bootstrapped) {
+          heldBack.addAll(records);
+          return;
+        }
+      }
+    }
+    records.forEach(this::apply);
+  }
+
+  private void apply(Record record) {
+    Instant createdAt = record.dynamodb().approximateCreationDateTime();
+    if (createdAt != null && createdAt.isBefore(scanStartedAt.minus(SCAN_OVERLAP))) {
+      return;
+    }
+    String id = record.dynamodb().keys().get("id").s();
+    if (record.eventName() == OperationType.REMOVE) {
+      update(id, null);
+    } else {
+      AttributeValue status = record.dynamodb().newImage().get("status");
+      update(id, status == null || status.s() == null ? null : Status.valueOf(status.s()));
+    }
+    if (createdAt != null) {
+      Instant now = Instant.now();
+      replicationLag = Duration.between(createdAt, now);
+      lastChangeAt = now;
+    }
+  }
+
+  // Atomic per customer: the map entry, the member sets and the counts change together
+  private void update(String id, Status newStatus) {
+    statusById.compute(id, (key, oldStatus) -> {
+      if (oldStatus == newStatus) {
+        return oldStatus;
+      }
+      if (oldStatus != null) {
+        membersByStatus.get(oldStatus).remove(id);
+        countByStatus.get(oldStatus).decrementAndGet();
+      }
+      if (newStatus != null) {
+        membersByStatus.get(newStatus).add(id);
+        countByStatus.get(newStatus).incrementAndGet();
+      }
+      return newStatus;
+    });
+  }
+
+  public long count(Status status) {
+    return countByStatus.get(status).get();
+  }
+
+  public boolean hasStatus(String id, Status status) {
+    return statusById.get(id) == status;
+  }
+
+  public Optional<Status> statusOf(String id) {
+    return Optional.ofNullable(statusById.get(id));
+  }
+
+  /**
+   * @return a live, read-only view of the ids of the customers with the status
+   */
+  public Set<String> customersWithStatus(Status status) {
+    return Collections.unmodifiableSet(membersByStatus.get(status));
+  }
+
+  /**
+   * @return how long the most recently applied change took from the table write to the view;
+   *     zero until the first change arrived
+   */
+  public Duration replicationLag() {
+    return replicationLag;
+  }
+
+  /**
+   * @return when the view last applied a change from the stream, if ever
+   */
+  public Optional<Instant> lastChangeAt() {
+    return Optional.ofNullable(lastChangeAt);
+  }
+
+  public boolean isBootstrapped() {
+    return bootstrapped;
+  }
+
+  @Override
+  public void close() {
+    if (consumer != null) {
+      consumer.close();
+    }
+  }
+}
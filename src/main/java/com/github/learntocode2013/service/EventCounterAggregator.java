@@ -0,0 +1,250 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.EventEntity;
+import com.github.learntocode2013.util.ShardFanOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre-aggregates event counts per type and minute on the write path.
+ * Writers only increment an in-memory {@link LongAdder}; a background task periodically
+ * flushes every non-zero counter as an atomic {@code ADD} to a counter item in the Events
+ * table, so reading the counts of a day costs a few hundred items instead of every event.
+ *
+ * <p>Counter items are spread over {@code counterShards} partitions,
+ * {@code COUNTS#{yyyy-MM-dd}#SHARD{n}}, with the sort key {@code {eventType}#{minuteMillis}}.
+ * Each flush picks a shard at random, so many writers flushing the same minute do not all
+ * update the same item. A flush that fails is added back and retried with the next flush;
+ * since {@code ADD} is not idempotent, a failure after the update was applied (e.g. a
+ * timed-out response) counts those events twice.
+ */
+public class EventCounterAggregator implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(EventCounterAggregator.class);
+    public static final int DEFAULT_COUNTER_SHARDS = 4;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(10);
+    private static final long MINUTE_MILLIS = 60_000L;
+    // Buckets older than this are flushed one last time and forgotten
+    private static final long RETIRE_AFTER_MILLIS = 5 * MINUTE_MILLIS;
+    private static final ShardFanOut COUNTER_FAN_OUT =
+            ShardFanOut.virtualThreads(16, Duration.ofSeconds(30));
+
+    private final DynamoDbClient dynamoDbClient;
+    private final int counterShards;
+    private final EventKeyCodec keyCodec;
+    private final Map<Bucket, LongAdder> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Aggregator with the default shard count and flush interval.
+     *
+     * @param dynamoDbClient the low-level client used for the ADD updates
+     */
+    public EventCounterAggregator(DynamoDbClient dynamoDbClient) {
+        this(dynamoDbClient, DEFAULT_COUNTER_SHARDS, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param dynamoDbClient the low-level client used for the ADD updates
+     * @param counterShards the number of partitions a day's counters are spread over
+     * @param flushInterval how often in-memory counts are written to the table
+     */
+    public EventCounterAggregator(DynamoDbClient dynamoDbClient, int counterShards,
+                                  Duration flushInterval) {
+        if (counterShards < 1) {
+            throw new IllegalArgumentException("Counter shards must be positive");
+        }
+        this.dynamoDbClient = dynamoDbClient;
+        this.counterShards = counterShards;
+        this.keyCodec = new EventKeyCodec();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable ->
+                Thread.ofPlatform().name("event-counter-flusher").daemon(true).unstarted(runnable));
+        long intervalMillis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Count a written event.
+     *
+     * @param eventType the type of the event
+     * @param timestampMillis the time the event was recorded
+     */
+    public void record(String eventType, long timestampMillis) {
+        Bucket bucket = new Bucket(eventType, timestampMillis - Math.floorMod(timestampMillis,
+                MINUTE_MILLIS));
+        buckets.computeIfAbsent(bucket, b -> new LongAdder()).increment();
+    }
+
+    /**
+     * Count a written event, taking the timestamp from its {@code {millis}#{eventId}} sort key.
+     */
+    void record(EventEntity event) {
+        String sk = event.getSk();
+        record(event.getEventType(), Long.parseLong(sk, 0, sk.indexOf('#'), 10));
+    }
+
+    /**
+     * Write all pending counts to the table.
+     *
+     * @return the number of counter items updated
+     */
+    public int flush() {
+        long retireBefore = System.currentTimeMillis() - RETIRE_AFTER_MILLIS;
+        int updated = 0;
+        for (Map.Entry<Bucket, LongAdder> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getKey();
+            LongAdder adder = entry.getValue();
+            if (bucket.minuteMillis < retireBefore) {
+                // Writers arriving after the removal start a new adder, which a later flush sees
+                buckets.remove(bucket, adder);
+            }
+            long delta = adder.sumThenReset();
+            if (delta == 0) {
+                continue;
+            }
+            try {
+                addCount(bucket, delta);
+                updated++;
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush {} events of {}, retrying with the next flush",
+                        delta, bucket, e);
+                buckets.computeIfAbsent(bucket, b -> new LongAdder()).add(delta);
+            }
+        }
+        return updated;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Event counter flush failed", e);
+        }
+    }
+
+    private void addCount(Bucket bucket, long delta) {
+        int shard = ThreadLocalRandom.current().nextInt(counterShards);
+        LocalDate day = keyCodec.dayOf(bucket.minuteMillis);
+        UpdateItemRequest request = UpdateItemRequest.builder()
+                .tableName(EventService.TABLE_NAME)
+                .key(Map.of(
+                        "pk", AttributeValue.fromS(partitionKey(day, shard)),
+                        "sk", AttributeValue.fromS(sortKey(bucket.eventType, bucket.minuteMillis))))
+                .updateExpression("ADD #count :delta SET #type = :type, #minute = :minute")
+                .expressionAttributeNames(Map.of(
+                        "#count", "eventCount",
+                        "#type", "eventType",
+                        "#minute", "minuteMillis"))
+                .expressionAttributeValues(Map.of(
+                        ":delta", AttributeValue.fromN(Long.toString(delta)),
+                        ":type", AttributeValue.fromS(bucket.eventType),
+                        ":minute", AttributeValue.fromN(Long.toString(bucket.minuteMillis))))
+                .build();
+        dynamoDbClient.updateItem(request);
+    }
+
+    /**
+     * Get the flushed counts of an event type per minute. Counts still held in memory
+     * are not included; call {@link #flush()} first for exact numbers.
+     *
+     * @param eventType the type of event
+     * @param from the start of the window (inclusive), rounded down to the minute
+     * @param to the end of the window (exclusive)
+     * @return event counts keyed by the start of their minute, in time order
+     */
+    public Map<Instant, Long> getCountsPerMinute(String eventType, Instant from, Instant to) {
+        long fromMinute = from.toEpochMilli() - Math.floorMod(from.toEpochMilli(), MINUTE_MILLIS);
+        long toMillis = to.toEpochMilli();
+        if (fromMinute >= toMillis) {
+            return Map.of();
+        }
+        List<Callable<List<Map<String, AttributeValue>>>> shardQueries = new ArrayList<>();
+        LocalDate lastDay = keyCodec.dayOf(toMillis - 1);
+        for (LocalDate day = keyCodec.dayOf(fromMinute); !day.isAfter(lastDay);
+             day = day.plusDays(1)) {
+            for (int shard = 0; shard < counterShards; shard++) {
+                String pk = partitionKey(day, shard);
+                shardQueries.add(() -> queryCounters(pk, eventType, fromMinute, toMillis));
+            }
+        }
+        Map<Instant, Long> counts = new TreeMap<>();
+        for (List<Map<String, AttributeValue>> items : COUNTER_FAN_OUT.invokeAll(shardQueries)) {
+            for (Map<String, AttributeValue> item : items) {
+                counts.merge(Instant.ofEpochMilli(Long.parseLong(item.get("minuteMillis").n())),
+                        Long.parseLong(item.get("eventCount").n()), Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the flushed number of events of a type in the window
+     * @see #getCountsPerMinute(String, Instant, Instant)
+     */
+    public long getCount(String eventType, Instant from, Instant to) {
+        return getCountsPerMinute(eventType, from, to).values().stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    private List<Map<String, AttributeValue>> queryCounters(String pk, String eventType,
+                                                            long fromMinute, long toMillis) {
+        // "{type}#{millis}" bounds; an exclusive upper bound is one millisecond less
+        QueryRequest request = QueryRequest.builder()
+                .tableName(EventService.TABLE_NAME)
+                .keyConditionExpression("pk = :pk AND sk BETWEEN :from AND :to")
+                .expressionAttributeValues(Map.of(
+                        ":pk", AttributeValue.fromS(pk),
+                        ":from", AttributeValue.fromS(sortKey(eventType, fromMinute)),
+                        ":to", AttributeValue.fromS(sortKey(eventType, toMillis - 1))))
+                .build();
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        dynamoDbClient.queryPaginator(request).items().forEach(items::add);
+        return items;
+    }
+
+    /**
+     * Flush the remaining counts and stop the background flusher.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private static String partitionKey(LocalDate day, int shard) {
+        return "COUNTS#" + EventKeyCodec.isoDate(day) + "#SHARD" + shard;
+    }
+
+    private static String sortKey(String eventType, long minuteMillis) {
+        // Epoch millis have 13 digits until the year 2286, so they sort as strings
+        return eventType + '#' + minuteMillis;
+    }
+
+    private record Bucket(String eventType, long minuteMillis) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.learntocode2013.service;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings of an {@link EventIngestor}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class EventIngestionConfig {
+    /**
+     * What a producer does when its ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait until the drainer frees a slot. */
+        BLOCK,
+        /** Reject the event; {@code submit} returns false. */
+        DROP,
+        /** Hand the event to the {@link EventSpill} on the producer thread. */
+        SPILL
+    }
+
+    // Slots per ring buffer, rounded up to a power of two
+    @Builder.Default
+    int ringCapacity = 8192;
+    // One ring buffer and one drainer thread each; producers are spread by thread id
+    @Builder.Default
+    int drainerThreads = 1;
+    // Events per BatchWriteItem request (DynamoDB allows at most 25)
+    @Builder.Default
+    int batchSize = 25;
+    @Builder.Default
+    OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    // How long an idle drainer parks before polling its ring again
+    @Builder.Default
+    Duration idleWait = Duration.ofMillis(1);
+}
@@ -0,0 +1,274 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.EventEntity;
+import com.github.learntocode2013.util.MpscRingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fire-and-forget front-end for {@link EventService#recordShardedEvent(String, String, String)}.
+ * Producers copy the event into a preallocated slot of a lock-free ring buffer and return;
+ * drainer threads turn buffered events into sharded items and write them with BatchWriteItem.
+ * Each drainer owns one multi-producer single-consumer ring, and producers pick a ring by
+ * thread id, so there is no lock on either side.
+ */
+public class EventIngestor implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(EventIngestor.class);
+    private static final int SPINS_BEFORE_PARKING = 100;
+    private final EventService eventService;
+    private final EventIngestionConfig config;
+    private final EventSpill spill;
+    private final List<MpscRingBuffer<Slot>> rings = new ArrayList<>();
+    private final List<Thread> drainers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Constructor for the BLOCK and DROP overflow policies; failed writes are counted and logged.
+     *
+     * @param eventService builds and writes the sharded items
+     * @param config ring buffer, batching and overflow settings
+     */
+    public EventIngestor(EventService eventService, EventIngestionConfig config) {
+        this(eventService, config, null);
+    }
+
+    /**
+     * Constructor with a spill target for overflowing events and failed writes.
+     *
+     * @param eventService builds and writes the sharded items
+     * @param config ring buffer, batching and overflow settings
+     * @param spill takes events that overflow the buffer (SPILL policy) or fail to be written
+     */
+    public EventIngestor(EventService eventService, EventIngestionConfig config, EventSpill spill) {
+        if (config.getOverflowPolicy() == EventIngestionConfig.OverflowPolicy.SPILL && spill == null) {
+            throw new IllegalArgumentException("The SPILL overflow policy needs an EventSpill");
+        }
+        if (config.getBatchSize() < 1 || config.getBatchSize() > 25) {
+            throw new IllegalArgumentException("Batch size must be between 1 and 25");
+        }
+        this.eventService = eventService;
+        this.config = config;
+        this.spill = spill;
+        for (int i = 0; i < Math.max(1, config.getDrainerThreads()); i++) {
+            MpscRingBuffer<Slot> ring = new MpscRingBuffer<>(config.getRingCapacity(), Slot::new);
+            rings.add(ring);
+            drainers.add(Thread.ofPlatform()
+                    .name("event-ingest-drainer-" + i)
+                    .daemon(true)
+                    .start(() -> drain(ring)));
+        }
+    }
+
+    /**
+     * Buffer an event for writing, sharded by its id.
+     *
+     * @return false if the event was dropped because the buffer was full
+     */
+    public boolean submit(String eventType, String eventId, String eventData) {
+        return submit(eventType, eventId, eventData, eventId);
+    }
+
+    /**
+     * Buffer an event for writing, sharded by a caller-chosen key.
+     *
+     * @return false if the event was dropped because the buffer was full
+     * @throws IllegalStateException if the ingestor is closed
+     */
+    public boolean submit(String eventType, String eventId, String eventData, String shardKey) {
+        if (!running) {
+            throw new IllegalStateException("Event ingestor is closed");
+        }
+        long timestampMillis = System.currentTimeMillis();
+        long enqueuedNanos = System.nanoTime();
+        MpscRingBuffer<Slot> ring =
+                rings.get((int) (Thread.currentThread().threadId() % rings.size()));
+        long sequence = ring.tryClaim();
+        if (sequence < 0) {
+            switch (config.getOverflowPolicy()) {
+                case DROP -> {
+                    dropped.increment();
+                    return false;
+                }
+                case SPILL -> {
+                    spill.spill(eventService.newShardedEvent(eventType, eventId, eventData,
+                            shardKey, dayOf(timestampMillis), timestampMillis));
+                    spilled.increment();
+                    return true;
+                }
+                case BLOCK -> sequence = claimBlocking(ring);
+            }
+        }
+        ring.get(sequence).fill(eventType, eventId, eventData, shardKey, timestampMillis,
+                enqueuedNanos);
+        ring.publish(sequence);
+        submitted.increment();
+        return true;
+    }
+
+    private long claimBlocking(MpscRingBuffer<Slot> ring) {
+        long sequence;
+        int spins = 0;
+        while ((sequence = ring.tryClaim()) < 0) {
+            if (!running) {
+                throw new IllegalStateException("Event ingestor was closed while waiting for space");
+            }
+            if (++spins < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(config.getIdleWait().toNanos());
+            }
+        }
+        return sequence;
+    }
+
+    private void drain(MpscRingBuffer<Slot> ring) {
+        List<EventEntity> batch = new ArrayList<>(config.getBatchSize());
+        long[] enqueuedNanos = new long[config.getBatchSize()];
+        while (running || ring.size() > 0) {
+            batch.clear();
+            int drained = ring.drain(config.getBatchSize(), slot -> {
+                // Must not throw: the slot is handed back to producers once this returns
+                try {
+                    EventEntity event = eventService.newShardedEvent(slot.eventType,
+                            slot.eventId, slot.eventData, slot.shardKey,
+                            dayOf(slot.timestampMillis), slot.timestampMillis);
+                    enqueuedNanos[batch.size()] = slot.enqueuedNanos;
+                    batch.add(event);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to build event: {}", slot.eventId, e);
+                    failed.increment();
+                } finally {
+                    slot.clear();
+                }
+            });
+            if (drained == 0) {
+                LockSupport.parkNanos(config.getIdleWait().toNanos());
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch, enqueuedNanos);
+            }
+        }
+    }
+
+    private void flush(List<EventEntity> batch, long[] enqueuedNanos) {
+        List<EventEntity> unwritten;
+        try {
+            unwritten = eventService.writeEvents(batch);
+        } catch (RuntimeException e) {
+            log.warn("Batch write of {} events failed", batch.size(), e);
+            unwritten = batch;
+        }
+        Set<EventEntity> failedEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+        failedEvents.addAll(unwritten);
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            if (failedEvents.contains(batch.get(i))) {
+                continue;
+            }
+            long latency = now - enqueuedNanos[i];
+            totalLatencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            written.increment();
+        }
+        for (EventEntity event : failedEvents) {
+            if (spill != null) {
+                spill.spill(event);
+                spilled.increment();
+            } else {
+                log.warn("Dropping event that could not be written: {}", event.getSk());
+                failed.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the current counters, queue depth and end-to-end latency
+     */
+    public IngestionMetrics metrics() {
+        long writtenCount = written.sum();
+        return IngestionMetrics.builder()
+                .submitted(submitted.sum())
+                .written(writtenCount)
+                .dropped(dropped.sum())
+                .spilled(spilled.sum())
+                .failed(failed.sum())
+                .queueDepth(rings.stream().mapToInt(MpscRingBuffer::size).sum())
+                .averageLatency(Duration.ofNanos(
+                        writtenCount == 0 ? 0 : totalLatencyNanos.sum() / writtenCount))
+                .maxLatency(Duration.ofNanos(maxLatencyNanos.get()))
+                .build();
+    }
+
+    /**
+     * Stop accepting events and wait until the drainers wrote everything already buffered.
+     * Producers should be stopped first: an event submitted while the drainers shut down
+     * may be left in the buffer.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread drainer : drainers) {
+            LockSupport.unpark(drainer);
+            try {
+                drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static LocalDate dayOf(long timestampMillis) {
+        // Same day recordShardedEvent would have filed the event under
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+    }
+
+    // Preallocated ring entry; written by one producer, read by the drainer
+    private static final class Slot {
+        String eventType;
+        String eventId;
+        String eventData;
+        String shardKey;
+        long timestampMillis;
+        long enqueuedNanos;
+
+        void fill(String eventType, String eventId, String eventData, String shardKey,
+                  long timestampMillis, long enqueuedNanos) {
+            this.eventType = eventType;
+            this.eventId = eventId;
+            this.eventData = eventData;
+            this.shardKey = shardKey;
+            this.timestampMillis = timestampMillis;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        void clear() {
+            eventType = null;
+            eventId = null;
+            eventData = null;
+            shardKey = null;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.learntocode2013.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds the keys of sharded events without {@link String#format} or {@link DateTimeFormatter}.
+ * The partition keys and type-index keys of a day are built once and cached per shard,
+ * so the write path only concatenates the sort key. Also resolves the day an epoch
+ * milli falls on from cached day bounds and generates ULID-style event ids.
+ *
+ * <p>Keys are identical to the ones built with the formats they replace:
+ * {@code EVENTS#{yyyy-MM-dd}#SHARD{n}}, {@code {type}#{yyyy-MM-dd}#SHARD{n}} and
+ * {@code {millis}#{eventId}}.
+ */
+public class EventKeyCodec {
+    // Days kept in the prefix cache; writers use one or two, range reads touch more
+    private static final int MAX_CACHED_DAYS = 64;
+    // Event types cached per day; beyond that type keys are built on every call
+    private static final int MAX_CACHED_TYPES = 1024;
+    private static final char[] CROCKFORD_BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ULID_LENGTH = 26;
+
+    private final ZoneId zone;
+    private final Map<LocalDate, DayKeys> days = new ConcurrentHashMap<>();
+    private volatile DayBounds currentDay;
+    private final ThreadLocal<UlidState> ulidState = ThreadLocal.withInitial(UlidState::new);
+
+    /**
+     * Codec that files events under the day of the system default time zone.
+     */
+    public EventKeyCodec() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * @param zone the time zone that decides which day an event is filed under
+     */
+    public EventKeyCodec(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @return the day the epoch milli falls on in this codec's time zone
+     */
+    public LocalDate dayOf(long epochMillis) {
+        DayBounds bounds = currentDay;
+        if (bounds == null || epochMillis < bounds.startMillis || epochMillis >= bounds.endMillis) {
+            LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), zone);
+            bounds = new DayBounds(day,
+                    day.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+            currentDay = bounds;
+        }
+        return bounds.day;
+    }
+
+    /**
+     * @return {@code EVENTS#{date}#SHARD{shardId}}
+     */
+    public String partitionKey(LocalDate day, int shardId) {
+        return keysOf(day).partitionKey(shardId);
+    }
+
+    /**
+     * @return {@code {eventType}#{date}#SHARD{shardId}}, the partition key of the type index
+     */
+    public String typeShardKey(String eventType, LocalDate day, int shardId) {
+        return keysOf(day).typeShardKey(eventType, shardId);
+    }
+
+    /**
+     * @return {@code {timestampMillis}#{eventId}}
+     */
+    public String sortKey(long timestampMillis, String eventId) {
+        // 13 digits for any date between 2001 and 2286, one separator
+        return new StringBuilder(14 + eventId.length())
+                .append(timestampMillis)
+                .append('#')
+                .append(eventId)
+                .toString();
+    }
+
+    /**
+     * Generate a 26 character ULID: 48 bits of epoch millis followed by 80 random bits,
+     * in Crockford base32. Ids generated by one thread within the same millisecond
+     * increment the random part, so they sort in generation order.
+     *
+     * @param timestampMillis the epoch millis encoded into the id
+     */
+    public String newEventId(long timestampMillis) {
+        UlidState state = ulidState.get();
+        if (timestampMillis > state.lastMillis) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            state.lastMillis = timestampMillis;
+            state.randomHigh = random.nextInt() & 0xFFFF;
+            state.randomLow = random.nextLong();
+        } else if (++state.randomLow == 0) {
+            // Carry into the upper 16 random bits; overflowing 80 bits in a millisecond
+            // is not reachable in practice
+            state.randomHigh = (state.randomHigh + 1) & 0xFFFF;
+        }
+        long millis = state.lastMillis;
+        char[] id = new char[ULID_LENGTH];
+        // 10 characters of timestamp, 50 bits of which the top 2 are always zero
+        for (int i = 9; i >= 0; i--) {
+            id[i] = CROCKFORD_BASE32[(int) (millis & 31)];
+            millis >>>= 5;
+        }
+        // 16 characters of randomness: 80 bits = 16 high bits followed by 64 low bits
+        long low = state.randomLow;
+        long high = state.randomHigh;
+        for (int i = 25; i >= 10; i--) {
+            id[i] = CROCKFORD_BASE32[(int) (low & 31)];
+            low = (low >>> 5) | ((high & 31) << 59);
+            high >>>= 5;
+        }
+        return new String(id);
+    }
+
+    private DayKeys keysOf(LocalDate day) {
+        DayKeys keys = days.get(day);
+        if (keys == null) {
+            if (days.size() >= MAX_CACHED_DAYS) {
+                days.clear();
+            }
+            keys = days.computeIfAbsent(day, DayKeys::new);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the date as {@code yyyy-MM-dd}, the same as {@link DateTimeFormatter#ISO_DATE}
+     */
+    static String isoDate(LocalDate day) {
+        int year = day.getYear();
+        if (year < 1000 || year > 9999) {
+            return day.format(DateTimeFormatter.ISO_DATE);
+        }
+        char[] chars = new char[10];
+        chars[0] = (char) ('0' + year / 1000);
+        chars[1] = (char) ('0' + year / 100 % 10);
+        chars[2] = (char) ('0' + year / 10 % 10);
+        chars[3] = (char) ('0' + year % 10);
+        chars[4] = '-';
+        chars[5] = (char) ('0' + day.getMonthValue() / 10);
+        chars[6] = (char) ('0' + day.getMonthValue() % 10);
+        chars[7] = '-';
+        chars[8] = (char) ('0' + day.getDayOfMonth() / 10);
+        chars[9] = (char) ('0' + day.getDayOfMonth() % 10);
+        return new String(chars);
+    }
+
+    private record DayBounds(LocalDate day, long startMillis, long endMillis) {
+    }
+
+    private static final class UlidState {
+        long lastMillis = Long.MIN_VALUE;
+        int randomHigh;
+        long randomLow;
+    }
+
+    // Keys of one day; arrays are replaced, never mutated after publication
+    private static final class DayKeys {
+        private final String dateString;
+        private final String partitionPrefix;
+        private final Map<String, String[]> typeKeys = new ConcurrentHashMap<>();
+        private volatile String[] partitionKeys = new String[0];
+
+        DayKeys(LocalDate day) {
+            this.dateString = isoDate(day);
+            this.partitionPrefix = "EVENTS#" + dateString + "#SHARD";
+        }
+
+        String partitionKey(int shardId) {
+            String[] keys = partitionKeys;
+            if (shardId < keys.length) {
+                return keys[shardId];
+            }
+            // Racing threads build equal arrays, so losing an update is harmless
+            keys = grow(keys, shardId, partitionPrefix);
+            partitionKeys = keys;
+            return keys[shardId];
+        }
+
+        String typeShardKey(String eventType, int shardId) {
+            String[] keys = typeKeys.get(eventType);
+            if (keys != null && shardId < keys.length) {
+                return keys[shardId];
+            }
+            String prefix = eventType + '#' + dateString + "#SHARD";
+            if (keys == null && typeKeys.size() >= MAX_CACHED_TYPES) {
+                return prefix + shardId;
+            }
+            keys = grow(keys == null ? new String[0] : keys, shardId, prefix);
+            typeKeys.put(eventType, keys);
+            return keys[shardId];
+        }
+
+        private static String[] grow(String[] keys, int shardId, String prefix) {
+            // Double so that adaptive shard growth rebuilds the array only a few times
+            String[] grown = new String[Math.max(shardId + 1, keys.length * 2)];
+            System.arraycopy(keys, 0, grown, 0, keys.length);
+            for (int i = keys.length; i < grown.length; i++) {
+                grown[i] = prefix + i;
+            }
+            return grown;
+        }
+    }
+}
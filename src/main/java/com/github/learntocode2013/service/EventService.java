@@ -1,30 +1,77 @@
 package com.github.learntocode2013.service;
 
 import com.github.learntocode2013.model.EventEntity;
+import com.github.learntocode2013.model.EventShardMetadata;
+import com.github.learntocode2013.util.CompositeCursor;
+import com.github.learntocode2013.util.CursorPage;
+import com.github.learntocode2013.util.OrderedMergeIterator;
+import com.github.learntocode2013.util.PartitionPageReader;
+import com.github.learntocode2013.util.ShardFanOut;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Service class for Event operations.
  * Demonstrates the "hot partition" pattern using sharding.
  */
 public class EventService {
+    private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<EventEntity> eventTable;
     public static final String TABLE_NAME = "Events";
+    private static final int MAX_BATCH_WRITE_SIZE = 25;
+    private static final int MAX_BATCH_WRITE_ATTEMPTS = 5;
     private final int SHARDS_NEEDED;
+    private final ShardStrategy shardStrategy;
+    // Null unless the service runs in adaptive mode
+    private final AdaptiveShardManager adaptiveShards;
+    private final ShardFanOut fanOut;
+    private final EventKeyCodec keyCodec = new EventKeyCodec();
+    // Null unless write-time counting was enabled
+    private volatile EventCounterAggregator counters;
+    // Shared by services that do not bring their own fan-out; virtual threads need no shutdown
+    private static final ShardFanOut DEFAULT_FAN_OUT =
+            ShardFanOut.virtualThreads(64, Duration.ofSeconds(30));
+    // Items per shard query page when streaming, which bounds memory to one page per shard
+    private static final int STREAM_PAGE_SIZE = 100;
+    // Defaults for multi-day reads: partitions read at once and pages waiting for the consumer
+    private static final int RANGE_MAX_CONCURRENT_PARTITIONS = 16;
+    private static final int RANGE_BUFFERED_PAGES = 32;
+    // The sort key starts with the epoch millis, so it orders events in time
+    private static final Comparator<EventEntity> TIME_ORDER =
+            Comparator.comparing(EventEntity::getSk).thenComparing(EventEntity::getPk);
 
     /**
      * Constructor that takes a DynamoDbEnhancedClient.
@@ -33,8 +80,71 @@ public class EventService {
      * @param shardCount the number of shards to use (for write distribution)
      */
     public EventService(DynamoDbEnhancedClient enhancedClient, int shardCount) {
+        this(enhancedClient, shardCount, ShardStrategy.RANDOM);
+    }
+
+    /**
+     * Constructor that also selects how the write shard is picked.
+     *
+     * @param enhancedClient the DynamoDB enhanced client
+     * @param shardCount the number of shards to use (for write distribution)
+     * @param shardStrategy how an event is assigned to one of the shards
+     */
+    public EventService(DynamoDbEnhancedClient enhancedClient, int shardCount,
+                        ShardStrategy shardStrategy) {
+        this(enhancedClient, shardCount, shardStrategy, DEFAULT_FAN_OUT);
+    }
+
+    /**
+     * Constructor that also selects the executor the per-shard read queries run on.
+     *
+     * @param enhancedClient the DynamoDB enhanced client
+     * @param shardCount the number of shards to use (for write distribution)
+     * @param shardStrategy how an event is assigned to one of the shards
+     * @param fanOut runs the shard queries of a read and enforces its deadline
+     */
+    public EventService(DynamoDbEnhancedClient enhancedClient, int shardCount,
+                        ShardStrategy shardStrategy, ShardFanOut fanOut) {
+        this.enhancedClient = enhancedClient;
         this.eventTable = enhancedClient.table(TABLE_NAME, TableSchema.fromBean(EventEntity.class));
         this.SHARDS_NEEDED = shardCount;
+        this.shardStrategy = shardStrategy;
+        this.adaptiveShards = null;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Constructor for adaptive mode: each day starts with {@code minShards} shards and the
+     * count recorded in the day's metadata item is raised as write rate or throttling grows.
+     * Reads query only the shards the metadata item says exist.
+     *
+     * @param enhancedClient the DynamoDB enhanced client
+     * @param shardStrategy how an event is assigned to one of the shards
+     * @param adaptiveSharding thresholds used to raise a day's shard count
+     */
+    public EventService(DynamoDbEnhancedClient enhancedClient, ShardStrategy shardStrategy,
+                        AdaptiveShardingConfig adaptiveSharding) {
+        this(enhancedClient, shardStrategy, adaptiveSharding, DEFAULT_FAN_OUT);
+    }
+
+    /**
+     * Constructor for adaptive mode with a dedicated executor for the per-shard read queries.
+     *
+     * @param enhancedClient the DynamoDB enhanced client
+     * @param shardStrategy how an event is assigned to one of the shards
+     * @param adaptiveSharding thresholds used to raise a day's shard count
+     * @param fanOut runs the shard queries of a read and enforces its deadline
+     */
+    public EventService(DynamoDbEnhancedClient enhancedClient, ShardStrategy shardStrategy,
+                        AdaptiveShardingConfig adaptiveSharding, ShardFanOut fanOut) {
+        this.enhancedClient = enhancedClient;
+        this.eventTable = enhancedClient.table(TABLE_NAME, TableSchema.fromBean(EventEntity.class));
+        this.SHARDS_NEEDED = adaptiveSharding.getMinShards();
+        this.shardStrategy = shardStrategy;
+        this.adaptiveShards = new AdaptiveShardManager(
+                enhancedClient.table(TABLE_NAME, TableSchema.fromBean(EventShardMetadata.class)),
+                adaptiveSharding);
+        this.fanOut = fanOut;
     }
 
     /**
@@ -49,6 +159,15 @@ public class EventService {
         }
     }
 
+    /**
+     * Count every event this service writes, per type and minute.
+     *
+     * @param counters the aggregator that keeps and flushes the counts, or null to stop counting
+     */
+    public void setEventCounters(EventCounterAggregator counters) {
+        this.counters = counters;
+    }
+
     /**
      * Record a new event using sharding to distribute write load.
      *
@@ -57,24 +176,211 @@ public class EventService {
      * @param eventData the event data
      */
     public void recordShardedEvent(String eventType, String eventId, String eventData) {
+        recordShardedEvent(eventType, eventId, eventData, eventId);
+    }
+
+    /**
+     * Record a new event under a generated ULID-style id. The id starts with the
+     * timestamp and ids generated by one thread within a millisecond increase, so
+     * events of the same millisecond keep the order they were recorded in.
+     *
+     * @param eventType the type of event
+     * @param eventData the event data
+     * @return the generated event id
+     */
+    public String recordEvent(String eventType, String eventData) {
+        long now = System.currentTimeMillis();
+        LocalDate today = keyCodec.dayOf(now);
+        String eventId = keyCodec.newEventId(now);
+        putEvent(newShardedEvent(eventType, eventId, eventData, eventId, today, now), today);
+        return eventId;
+    }
+
+    /**
+     * Record a new event whose shard is derived from a caller-chosen key.
+     * With {@link ShardStrategy#HASHED} all events sharing the key land in the same shard,
+     * which keeps {@link #getEventsForKey(LocalDate, String)} a single-partition query.
+     *
+     * @param eventType the type of event
+     * @param eventId a unique ID for the event
+     * @param eventData the event data
+     * @param shardKey the key the shard is derived from (e.g. a user or device id)
+     */
+    public void recordShardedEvent(String eventType, String eventId, String eventData,
+                                   String shardKey) {
+        long now = System.currentTimeMillis();
+        LocalDate today = keyCodec.dayOf(now);
+        EventEntity event = newShardedEvent(eventType, eventId, eventData, shardKey, today, now);
+        putEvent(event, today);
+    }
+
+    /**
+     * Record a new event, handing it to a spill target instead of failing when the table
+     * throttles, has a server-side error or cannot be reached. Pair with {@link EventSpool}
+     * to have spilled events replayed once the table accepts writes again.
+     *
+     * @param eventType the type of event
+     * @param eventId a unique ID for the event
+     * @param eventData the event data
+     * @param shardKey the key the shard is derived from (e.g. a user or device id)
+     * @param spill takes the event when the table pushes back
+     * @return true if the event was written to the table, false if it was spilled
+     */
+    public boolean recordShardedEvent(String eventType, String eventId, String eventData,
+                                      String shardKey, EventSpill spill) {
+        long now = System.currentTimeMillis();
+        LocalDate today = keyCodec.dayOf(now);
+        EventEntity event = newShardedEvent(eventType, eventId, eventData, shardKey, today, now);
+        try {
+            putEvent(event, today);
+            return true;
+        } catch (SdkServiceException e) {
+            if (!e.isThrottlingException() && e.statusCode() < 500) {
+                throw e;
+            }
+        } catch (SdkClientException e) {
+            // The table could not be reached at all
+        }
+        spill.spill(event);
+        return false;
+    }
+
+    private void putEvent(EventEntity event, LocalDate day) {
+        // Use Enhanced Client to perform the PutItemCommand
+        try {
+            eventTable.putItem(event);
+        } catch (SdkServiceException e) {
+            if (adaptiveShards != null && e.isThrottlingException()) {
+                adaptiveShards.recordThrottle(day);
+            }
+            throw e;
+        }
+        if (adaptiveShards != null) {
+            adaptiveShards.recordWrite(day);
+        }
+        EventCounterAggregator eventCounters = counters;
+        if (eventCounters != null) {
+            eventCounters.record(event);
+        }
+    }
+
+    /**
+     * Build the item of a sharded event without writing it.
+     *
+     * @param day the day the event is filed under
+     * @param timestampMillis the time the event was recorded, used as sort key prefix
+     */
+    EventEntity newShardedEvent(String eventType, String eventId, String eventData,
+                                String shardKey, LocalDate day, long timestampMillis) {
         // 1. Calculate the shard ID
-        int shardId = ThreadLocalRandom.current().nextInt(SHARDS_NEEDED);
+        int shardId = shardStrategy.shardFor(shardKey, getShardCount(day));
 
         // 2. Construct the Partition Key
-        String dateString = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
-        String pk = String.format("EVENTS#%s#SHARD%d", dateString, shardId);
+        String pk = keyCodec.partitionKey(day, shardId);
 
         // 3. Construct the Sort Key (timestamped)
-        String sk = String.format("%d#%s", System.currentTimeMillis(), eventId);
+        String sk = keyCodec.sortKey(timestampMillis, eventId);
 
         EventEntity event = new EventEntity();
         event.setPk(pk);
         event.setSk(sk);
+        event.setEventId(eventId);
+        event.setShardKey(shardKey);
         event.setEventType(eventType);
+        event.setTypeShard(keyCodec.typeShardKey(eventType, day, shardId));
         event.setEventData(eventData);
+        return event;
+    }
 
-        // Use Enhanced Client to perform the PutItemCommand
-        eventTable.putItem(event);
+    /**
+     * Write already built events with BatchWriteItem, 25 per request, retrying unprocessed
+     * items with exponential backoff.
+     *
+     * @param events the events to write
+     * @return the events that could not be written
+     */
+    List<EventEntity> writeEvents(List<EventEntity> events) {
+        List<EventEntity> failed = new ArrayList<>();
+        for (int start = 0; start < events.size(); start += MAX_BATCH_WRITE_SIZE) {
+            List<EventEntity> pending =
+                    events.subList(start, Math.min(events.size(), start + MAX_BATCH_WRITE_SIZE));
+            for (int attempt = 0; !pending.isEmpty(); attempt++) {
+                if (attempt == MAX_BATCH_WRITE_ATTEMPTS) {
+                    failed.addAll(pending);
+                    break;
+                }
+                if (attempt > 0) {
+                    backOff(attempt);
+                }
+                WriteBatch.Builder<EventEntity> batch = WriteBatch.builder(EventEntity.class)
+                        .mappedTableResource(eventTable);
+                pending.forEach(batch::addPutItem);
+                BatchWriteItemEnhancedRequest request = BatchWriteItemEnhancedRequest.builder()
+                        .writeBatches(batch.build())
+                        .build();
+                List<EventEntity> unprocessed;
+                try {
+                    unprocessed = enhancedClient.batchWriteItem(request)
+                            .unprocessedPutItemsForTable(eventTable);
+                } catch (SdkServiceException e) {
+                    if (!e.isThrottlingException()) {
+                        throw e;
+                    }
+                    unprocessed = pending;
+                }
+                recordBatchOutcome(pending.size() - unprocessed.size(), !unprocessed.isEmpty());
+                countWritten(pending, unprocessed);
+                pending = unprocessed;
+            }
+        }
+        return failed;
+    }
+
+    private void countWritten(List<EventEntity> sent, List<EventEntity> unprocessed) {
+        EventCounterAggregator eventCounters = counters;
+        if (eventCounters == null) {
+            return;
+        }
+        // Unprocessed items come back as new objects, so match them by key
+        Set<String> unprocessedKeys = unprocessed.stream()
+                .map(event -> event.getPk() + '|' + event.getSk())
+                .collect(Collectors.toSet());
+        for (EventEntity event : sent) {
+            if (!unprocessedKeys.contains(event.getPk() + '|' + event.getSk())) {
+                eventCounters.record(event);
+            }
+        }
+    }
+
+    private void recordBatchOutcome(int written, boolean throttled) {
+        if (adaptiveShards == null) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < written; i++) {
+            adaptiveShards.recordWrite(today);
+        }
+        if (throttled) {
+            adaptiveShards.recordThrottle(today);
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(Math.min(1000L, 25L << attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the number of shards a day's events are spread over.
+     *
+     * @param date the day
+     * @return the fixed shard count, or the count recorded for the day in adaptive mode
+     */
+    public int getShardCount(LocalDate date) {
+        return adaptiveShards == null ? SHARDS_NEEDED : adaptiveShards.shardCountFor(date);
     }
 
     /**
@@ -85,51 +391,512 @@ public class EventService {
      * @return a list of all events for the date across all shards
      */
     public List<EventEntity> getEventsByDate(LocalDate date) {
-        String dateString = date.format(DateTimeFormatter.ISO_DATE);
-        List<CompletableFuture<List<EventEntity>>> futures = new ArrayList<>();
-
-        // Query each shard in parallel
-        for (int shardId = 0; shardId < SHARDS_NEEDED; shardId++) {
-            String pk = String.format("EVENTS#%s#SHARD%d", dateString, shardId);
+        return queryShards(date, allShards(date), null);
+    }
 
-            // Create a future for each shard query
-            CompletableFuture<List<EventEntity>> future = CompletableFuture.supplyAsync(() -> {
-                // Query this specific shard
+    /**
+     * Read one page of a date's events in time order.
+     * The returned cursor records, for every shard, the key of the last event handed out or
+     * that the shard is exhausted; passing it back resumes every shard from there. Each shard
+     * is read with a limit of its share of the page, so a call holds about two pages of
+     * events no matter how large the day is; shards that are ahead in time fetch more lazily.
+     *
+     * @param date the date to query for
+     * @param pageSize the maximum number of events to return
+     * @param cursor the cursor of the previous page, or null for the first page
+     * @return up to {@code pageSize} events and the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for another date
+     */
+    public CursorPage<EventEntity> getEventsByDate(LocalDate date, int pageSize, String cursor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        CompositeCursor position = CompositeCursor.decode(cursor, "EVENTS#" + date);
+        List<Integer> shards = allShards(date).stream()
+                .filter(shardId -> !position.isExhausted(shardId))
+                .toList();
+        if (shards.isEmpty()) {
+            return new CursorPage<>(List.of(), null);
+        }
+        int shardLimit = Math.min(STREAM_PAGE_SIZE, Math.ceilDiv(pageSize, shards.size()));
+        List<Callable<Iterator<EventEntity>>> openShards = new ArrayList<>();
+        for (int shardId : shards) {
+            String pk = keyCodec.partitionKey(date, shardId);
+            Map<String, AttributeValue> resumeKey = position.resumeKey(shardId).orElse(null);
+            openShards.add(() -> {
                 QueryEnhancedRequest request = QueryEnhancedRequest.builder()
                         .queryConditional(
                             QueryConditional.keyEqualTo(
                                 Key.builder().partitionValue(pk).build()
                             )
                         )
+                        .exclusiveStartKey(resumeKey)
+                        .limit(shardLimit)
                         .build();
-
-                // Collect all items from this shard
-                return eventTable.query(request)
-                        .items()
-                        .stream()
-                        .collect(Collectors.toList());
+                Iterator<EventEntity> shardEvents = eventTable.query(request).items().iterator();
+                shardEvents.hasNext();
+                return shardEvents;
             });
+        }
 
-            futures.add(future);
+        OrderedMergeIterator<EventEntity> merged =
+                new OrderedMergeIterator<>(fanOut.invokeAll(openShards), TIME_ORDER);
+        List<EventEntity> events = new ArrayList<>(pageSize);
+        EventEntity[] lastPerShard = new EventEntity[shards.size()];
+        while (events.size() < pageSize && merged.hasNext()) {
+            EventEntity event = merged.next();
+            lastPerShard[merged.lastSource()] = event;
+            events.add(event);
         }
 
-        // Wait for all queries to complete and combine the results
-        return futures.stream()
-                .map(CompletableFuture::join) // This will block until all futures complete
-                .flatMap(List::stream)
+        CompositeCursor next = position;
+        boolean more = false;
+        for (int i = 0; i < shards.size(); i++) {
+            if (merged.isExhausted(i)) {
+                next = next.withExhausted(shards.get(i));
+                continue;
+            }
+            more = true;
+            if (lastPerShard[i] != null) {
+                next = next.withResumeKey(shards.get(i), Map.of(
+                        "pk", AttributeValue.fromS(lastPerShard[i].getPk()),
+                        "sk", AttributeValue.fromS(lastPerShard[i].getSk())));
+            }
+        }
+        return new CursorPage<>(events, more ? next.encode() : null);
+    }
+
+    /**
+     * Stream all events of a date across all shards in global time order.
+     * Every shard query already returns its events in sort key (time) order, so the shards
+     * are merged with a k-way merge that holds at most one page per shard. Further pages are
+     * fetched as the stream is consumed; a consumer that stops early (e.g. {@code limit(n)})
+     * does not read the rest of the day.
+     *
+     * @param date the date to query for
+     * @return the day's events, oldest first
+     */
+    public Stream<EventEntity> streamEventsByDateInTimeOrder(LocalDate date) {
+        return streamEventsByDateInTimeOrder(date, STREAM_PAGE_SIZE);
+    }
+
+    /**
+     * Get the first events of a date in global time order.
+     *
+     * @param date the date to query for
+     * @param count the maximum number of events to return
+     * @return up to {@code count} events, oldest first
+     */
+    public List<EventEntity> getFirstEventsByDate(LocalDate date, int count) {
+        // No shard can contribute more than count events, so no page needs to be larger
+        return streamEventsByDateInTimeOrder(date, Math.max(1, Math.min(count, STREAM_PAGE_SIZE)))
+                .limit(count)
                 .collect(Collectors.toList());
     }
 
+    private Stream<EventEntity> streamEventsByDateInTimeOrder(LocalDate date, int pageSize) {
+        List<Callable<Iterator<EventEntity>>> openShards = new ArrayList<>();
+        for (int shardId : allShards(date)) {
+            String pk = keyCodec.partitionKey(date, shardId);
+            openShards.add(() -> {
+                QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                        .queryConditional(
+                            QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(pk).build()
+                            )
+                        )
+                        .limit(pageSize)
+                        .build();
+                Iterator<EventEntity> shardEvents = eventTable.query(request).items().iterator();
+                // Fetch the first page of every shard in parallel; later pages are fetched lazily
+                shardEvents.hasNext();
+                return shardEvents;
+            });
+        }
+
+        Iterator<EventEntity> merged =
+                new OrderedMergeIterator<>(fanOut.invokeAll(openShards), TIME_ORDER);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
+    /**
+     * Order in which {@link #streamEventsBetweenDates(LocalDate, LocalDate, RangeOrder, int)}
+     * emits events.
+     */
+    public enum RangeOrder {
+        /**
+         * Pages are emitted as partitions deliver them. Events of one partition stay in time
+         * order; events of different partitions interleave. Highest throughput.
+         */
+        PARTITION,
+        /** Global time order: days one after another, each day's shards merged by timestamp. */
+        TIME
+    }
+
     /**
-     * Get all events of a specific type for a date across all shards.
+     * Stream the events of every day in [fromDate, toDate] with default concurrency.
+     *
+     * @see #streamEventsBetweenDates(LocalDate, LocalDate, RangeOrder, int)
+     */
+    public Stream<EventEntity> streamEventsBetweenDates(LocalDate fromDate, LocalDate toDate,
+                                                        RangeOrder order) {
+        return streamEventsBetweenDates(fromDate, toDate, order, RANGE_MAX_CONCURRENT_PARTITIONS);
+    }
+
+    /**
+     * Stream the events of every day in [fromDate, toDate] (both inclusive).
+     * Every date x shard partition is read page by page. In {@link RangeOrder#PARTITION} order
+     * at most {@code maxConcurrentPartitions} partitions of the whole range are read at a time
+     * and pages flow through a bounded buffer; in {@link RangeOrder#TIME} order one day's shards
+     * are open at a time with one page per shard in memory. Either way, nothing is materialised
+     * per day. Close the stream (try-with-resources) when it is not consumed to the end.
+     *
+     * @param fromDate the first day to read
+     * @param toDate the last day to read
+     * @param order the order events are emitted in
+     * @param maxConcurrentPartitions the maximum number of partitions read at the same time
+     * @return the events of the range
+     */
+    public Stream<EventEntity> streamEventsBetweenDates(LocalDate fromDate, LocalDate toDate,
+                                                        RangeOrder order,
+                                                        int maxConcurrentPartitions) {
+        Stream<LocalDate> days = fromDate.datesUntil(toDate.plusDays(1));
+        if (order == RangeOrder.TIME) {
+            // flatMap opens the next day only once the previous one is consumed
+            return days.flatMap(day -> streamEventsByDateInTimeOrder(day, STREAM_PAGE_SIZE));
+        }
+
+        List<Callable<Iterator<List<EventEntity>>>> partitions = new ArrayList<>();
+        days.forEach(day -> {
+            for (int shardId : allShards(day)) {
+                String pk = keyCodec.partitionKey(day, shardId);
+                partitions.add(() -> {
+                    QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                            .queryConditional(
+                                QueryConditional.keyEqualTo(
+                                    Key.builder().partitionValue(pk).build()
+                                )
+                            )
+                            .limit(STREAM_PAGE_SIZE)
+                            .build();
+                    // Pages are requested lazily as the reader hands them on
+                    return eventTable.query(request).stream()
+                            .map(Page::items)
+                            .iterator();
+                });
+            }
+        });
+        return PartitionPageReader.stream(partitions, maxConcurrentPartitions,
+                RANGE_BUFFERED_PAGES);
+    }
+
+    /**
+     * How {@link #getEventsByDateAndType(LocalDate, String, TypeLookup)} finds events of a type.
+     */
+    public enum TypeLookup {
+        /** Query the type's shards of {@link EventEntity#TYPE_INDEX}; reads only matching items. */
+        INDEX,
+        /**
+         * Query the day's shards with a server-side filter on eventType. Saves bandwidth but
+         * still consumes read capacity for the whole day; also finds events written before the
+         * index existed, until {@link #backfillTypeShards(LocalDate)} has run for their day.
+         */
+        FILTER
+    }
+
+    /**
+     * Get all events of a specific type for a date across all shards, oldest first.
+     * Uses {@link TypeLookup#FILTER}, which also finds events written before the type index
+     * existed; callers whose days are indexed or backfilled can pass {@link TypeLookup#INDEX}.
      *
      * @param date the date to query for
      * @param eventType the event type to filter on
      * @return a list of matching events
      */
     public List<EventEntity> getEventsByDateAndType(LocalDate date, String eventType) {
-        return getEventsByDate(date).stream()
-                .filter(event -> eventType.equals(event.getEventType()))
+        return getEventsByDateAndType(date, eventType, TypeLookup.FILTER);
+    }
+
+    /**
+     * Set the type index key on the events of a day that were written before the index
+     * existed, so {@link TypeLookup#INDEX} finds them. Every shard is read with a filter on
+     * the missing key, and each event is only written back if it still lacks one, so running
+     * it again is harmless.
+     *
+     * @param date the date to backfill
+     * @return the number of events backfilled
+     */
+    public int backfillTypeShards(LocalDate date) {
+        Expression missingTypeShard = Expression.builder()
+                .expression("attribute_exists(#type) AND attribute_not_exists(#typeShard)")
+                .expressionNames(Map.of("#type", "eventType", "#typeShard", "typeShard"))
+                .build();
+        Expression stillMissing = Expression.builder()
+                .expression("attribute_exists(pk) AND attribute_not_exists(#typeShard)")
+                .expressionNames(Map.of("#typeShard", "typeShard"))
+                .build();
+        List<Callable<Integer>> shardBackfills = new ArrayList<>();
+        for (int shardId : allShards(date)) {
+            String pk = keyCodec.partitionKey(date, shardId);
+            shardBackfills.add(() -> {
+                QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                        .queryConditional(
+                            QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(pk).build()
+                            )
+                        )
+                        .filterExpression(missingTypeShard)
+                        .build();
+                int backfilled = 0;
+                for (EventEntity event : eventTable.query(request).items()) {
+                    event.setTypeShard(
+                            keyCodec.typeShardKey(event.getEventType(), date, shardId));
+                    try {
+                        eventTable.updateItem(UpdateItemEnhancedRequest.builder(EventEntity.class)
+                                .item(event)
+                                .conditionExpression(stillMissing)
+                                .build());
+                        backfilled++;
+                    } catch (ConditionalCheckFailedException e) {
+                        // Deleted or backfilled by someone else since it was read
+                    }
+                }
+                return backfilled;
+            });
+        }
+        return fanOut.invokeAll(shardBackfills).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Get all events of a specific type for a date across all shards, oldest first.
+     *
+     * @param date the date to query for
+     * @param eventType the event type to filter on
+     * @param lookup whether to use the type index or a filter expression
+     * @return a list of matching events
+     */
+    public List<EventEntity> getEventsByDateAndType(LocalDate date, String eventType,
+                                                    TypeLookup lookup) {
+        if (lookup == TypeLookup.FILTER) {
+            List<EventEntity> events =
+                    queryShards(date, allShards(date), attributeEquals("eventType", eventType));
+            events.sort(TIME_ORDER);
+            return events;
+        }
+
+        List<Callable<List<EventEntity>>> shardQueries = new ArrayList<>();
+        for (int shardId : allShards(date)) {
+            String typeShard = keyCodec.typeShardKey(eventType, date, shardId);
+            shardQueries.add(() -> {
+                QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                        .queryConditional(
+                            QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(typeShard).build()
+                            )
+                        )
+                        .build();
+                return eventTable.index(EventEntity.TYPE_INDEX).query(request).stream()
+                        .flatMap(page -> page.items().stream())
+                        .collect(Collectors.toList());
+            });
+        }
+        return mergeInOrder(fanOut.invokeAll(shardQueries), TIME_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the events recorded in the half-open window [from, to), oldest first.
+     * Every shard of every day the window touches is queried in parallel with a
+     * {@code sortBetween} key condition on the timestamp prefix of the sort key, so only
+     * the window's items are read instead of whole days.
+     *
+     * @param from the start of the window (inclusive)
+     * @param to the end of the window (exclusive)
+     * @return the events recorded in the window
+     */
+    public List<EventEntity> getEventsBetween(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        // Events are filed under the writer's local date, see recordShardedEvent
+        LocalDate lastDay = LocalDate.ofInstant(to.minusMillis(1), ZoneId.systemDefault());
+        // "{millis}" sorts before every "{millis}#{eventId}", which makes the lower
+        // bound inclusive and the upper bound exclusive
+        String fromSk = Long.toString(from.toEpochMilli());
+        String toSk = Long.toString(to.toEpochMilli());
+        List<Callable<List<EventEntity>>> partitionQueries = new ArrayList<>();
+        for (LocalDate day = LocalDate.ofInstant(from, ZoneId.systemDefault());
+             !day.isAfter(lastDay); day = day.plusDays(1)) {
+            for (int shardId : allShards(day)) {
+                String pk = keyCodec.partitionKey(day, shardId);
+                partitionQueries.add(() -> {
+                    QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                            .queryConditional(QueryConditional.sortBetween(
+                                Key.builder().partitionValue(pk).sortValue(fromSk).build(),
+                                Key.builder().partitionValue(pk).sortValue(toSk).build()
+                            ))
+                            .build();
+                    return eventTable.query(request).items().stream()
+                            .collect(Collectors.toList());
+                });
+            }
+        }
+        return mergeInOrder(fanOut.invokeAll(partitionQueries), TIME_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the latest events of a date, newest first.
+     * Each shard is read backwards with a per-shard limit of {@code count}, so at most
+     * {@code count} items per shard are read no matter how large the day is.
+     *
+     * @param date the date to query for
+     * @param count the maximum number of events to return
+     * @return up to {@code count} events, newest first
+     */
+    public List<EventEntity> getLatestEvents(LocalDate date, int count) {
+        if (count < 1) {
+            return List.of();
+        }
+        List<Callable<List<EventEntity>>> shardQueries = new ArrayList<>();
+        for (int shardId : allShards(date)) {
+            String pk = keyCodec.partitionKey(date, shardId);
+            shardQueries.add(() -> {
+                QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                        .queryConditional(
+                            QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(pk).build()
+                            )
+                        )
+                        .scanIndexForward(false)
+                        .limit(count)
+                        .build();
+                // limit() stops the stream before a second page would be requested
+                return eventTable.query(request).items().stream()
+                        .limit(count)
+                        .collect(Collectors.toList());
+            });
+        }
+        return mergeInOrder(fanOut.invokeAll(shardQueries), TIME_ORDER.reversed(), count);
+    }
+
+    /**
+     * Look up a single event by its id.
+     * With a deterministic shard strategy only the shard the id hashes to is queried;
+     * with {@link ShardStrategy#RANDOM} every shard of the day has to be searched.
+     * Events recorded under a custom shard key should be read with
+     * {@link #getEventsForKey(LocalDate, String)} instead.
+     *
+     * @param date the date the event was recorded on
+     * @param eventId the event id
+     * @return the event, or empty if not found
+     */
+    public Optional<EventEntity> getEvent(LocalDate date, String eventId) {
+        return queryShards(date, shardsFor(date, eventId), attributeEquals("eventId", eventId))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Get the history of events recorded under a shard key for a date, oldest first.
+     * With a deterministic shard strategy this touches exactly one partition.
+     *
+     * @param date the date to query for
+     * @param shardKey the key the events were recorded with
+     * @return the events recorded under the key
+     */
+    public List<EventEntity> getEventsForKey(LocalDate date, String shardKey) {
+        return queryShards(date, shardsFor(date, shardKey), attributeEquals("shardKey", shardKey));
+    }
+
+    private List<EventEntity> queryShards(LocalDate date, List<Integer> shardIds,
+                                          Expression filter) {
+        List<Callable<List<EventEntity>>> shardQueries = new ArrayList<>();
+
+        // One query per shard; the fan-out runs them in parallel and cancels the
+        // outstanding ones if any shard fails or the deadline passes
+        for (int shardId : shardIds) {
+            String pk = keyCodec.partitionKey(date, shardId);
+
+            shardQueries.add(() -> {
+                // Query this specific shard
+                QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                        .queryConditional(
+                            QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(pk).build()
+                            )
+                        )
+                        .filterExpression(filter)
+                        .build();
+
+                // Collect all items from this shard
+                PageIterable<EventEntity> pages = eventTable.query(request);
+                return pages.items()
+                        .stream()
+                        .collect(Collectors.toList());
+            });
+        }
+
+        // Wait for all queries to complete and combine the results
+        return fanOut.invokeAll(shardQueries).stream()
+                .flatMap(List::stream)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    // Each partition's results are already sorted, so a k-way merge avoids re-sorting them
+    private static List<EventEntity> mergeInOrder(List<List<EventEntity>> partitions,
+                                                  Comparator<EventEntity> order, int count) {
+        List<Iterator<EventEntity>> sources = new ArrayList<>(partitions.size());
+        partitions.forEach(partition -> sources.add(partition.iterator()));
+        Iterator<EventEntity> merged = new OrderedMergeIterator<>(sources, order);
+        List<EventEntity> result = new ArrayList<>();
+        while (merged.hasNext() && result.size() < count) {
+            result.add(merged.next());
+        }
+        return result;
+    }
+
+    private List<Integer> allShards(LocalDate date) {
+        int shardCount = readShardCount(date);
+        List<Integer> shards = new ArrayList<>(shardCount);
+        for (int shardId = 0; shardId < shardCount; shardId++) {
+            shards.add(shardId);
+        }
+        return shards;
+    }
+
+    // The shard count a read has to cover. In adaptive mode the metadata item is read again
+    // rather than cached, so shards another process added are not skipped.
+    private int readShardCount(LocalDate date) {
+        return adaptiveShards == null ? SHARDS_NEEDED : adaptiveShards.currentShardCountFor(date);
+    }
+
+    // Shards that may hold events recorded under a key. In adaptive mode the count may have
+    // been raised during the day, so the key is hashed with every count the day could have had:
+    // raises double the count, capped at the maximum, which is then the current count.
+    private List<Integer> shardsFor(LocalDate date, String shardKey) {
+        if (!shardStrategy.isDeterministic()) {
+            return allShards(date);
+        }
+        int shardCount = readShardCount(date);
+        if (adaptiveShards == null) {
+            return List.of(shardStrategy.shardFor(shardKey, shardCount));
+        }
+        LinkedHashSet<Integer> shards = new LinkedHashSet<>();
+        for (int count = adaptiveShards.minShards(); count < shardCount; count *= 2) {
+            shards.add(shardStrategy.shardFor(shardKey, count));
+        }
+        shards.add(shardStrategy.shardFor(shardKey, shardCount));
+        return new ArrayList<>(shards);
+    }
+
+    private static Expression attributeEquals(String attribute, String value) {
+        // Key attributes cannot be used in a filter, which is why eventId/shardKey are
+        // stored as regular attributes next to the sort key.
+        return Expression.builder()
+                .expression("#attr = :value")
+                .expressionNames(Map.of("#attr", attribute))
+                .expressionValues(Map.of(":value", AttributeValue.fromS(value)))
+                .build();
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.EventEntity;
+
+/**
+ * Destination for events that could not be written to the Events table right away,
+ * either because the ingestion buffer was full or because the write failed.
+ */
+@FunctionalInterface
+public interface EventSpill {
+    /**
+     * Take over an event. Implementations must be thread-safe.
+     *
+     * @param event the fully built event item
+     */
+    void spill(EventEntity event);
+}
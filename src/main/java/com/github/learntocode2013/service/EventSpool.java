@@ -0,0 +1,425 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.EventEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead spool for events the Events table did not take.
+ * Events are appended as CRC-checked records to memory-mapped, fixed-size segment files;
+ * a full segment is sealed and a new one is started. A background replayer drains the
+ * oldest segment in batches through {@link EventService#writeEvents(List)} once the table
+ * accepts writes again and deletes every segment it fully replayed.
+ *
+ * <p>Record layout: {@code [int length][int crc32c][payload]}. The length is written last,
+ * so a record torn by a crash reads as the end of the segment. Replay is at-least-once:
+ * a batch is re-sent after a partial failure or a restart, which is harmless because the
+ * event's key is part of the record and a put of the same item is idempotent.
+ * Segments are flushed to disk when sealed and on close; until then a record survives a
+ * process crash but not an operating system crash.
+ */
+public class EventSpool implements EventSpill, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(EventSpool.class);
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final Duration DEFAULT_REPLAY_INTERVAL = Duration.ofSeconds(5);
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int HEADER_BYTES = 8;
+    private static final int REPLAY_BATCH_SIZE = 25;
+
+    private final Path directory;
+    private final EventService eventService;
+    private final int segmentSize;
+    private final Duration replayInterval;
+    // Oldest first; the last segment takes appends. Guarded by this.
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Object replayLock = new Object();
+    private final Thread replayer;
+    private volatile boolean running = true;
+    private long nextSegmentId;
+
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder corrupted = new LongAdder();
+
+    /**
+     * Open a spool with default segment size and replay interval.
+     *
+     * @param directory where segment files live; segments left by a previous run are replayed
+     * @param eventService writes replayed events
+     */
+    public EventSpool(Path directory, EventService eventService) {
+        this(directory, eventService, DEFAULT_SEGMENT_SIZE, DEFAULT_REPLAY_INTERVAL);
+    }
+
+    /**
+     * @param directory where segment files live; segments left by a previous run are replayed
+     * @param eventService writes replayed events
+     * @param segmentSize the size of a segment file in bytes
+     * @param replayInterval how long the replayer waits after the table pushed back
+     */
+    public EventSpool(Path directory, EventService eventService, int segmentSize,
+                      Duration replayInterval) {
+        this.directory = directory;
+        this.eventService = eventService;
+        this.segmentSize = segmentSize;
+        this.replayInterval = replayInterval;
+        try {
+            Files.createDirectories(directory);
+            recoverSegments();
+            segments.addLast(newSegment());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open event spool in " + directory, e);
+        }
+        this.replayer = Thread.ofPlatform()
+                .name("event-spool-replayer")
+                .daemon(true)
+                .start(this::replayLoop);
+    }
+
+    /**
+     * Append an event to the spool.
+     *
+     * @param event the fully built event item
+     * @throws IllegalArgumentException if the event does not fit into a segment
+     * @throws UncheckedIOException if a new segment cannot be created
+     */
+    @Override
+    public void spill(EventEntity event) {
+        byte[] payload = encode(event);
+        int recordSize = HEADER_BYTES + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Event of " + recordSize
+                    + " bytes does not fit into a spool segment of " + segmentSize + " bytes");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        synchronized (this) {
+            if (!running) {
+                throw new IllegalStateException("Event spool is closed");
+            }
+            Segment active = segments.peekLast();
+            if (segmentSize - active.writePosition < recordSize) {
+                active.seal();
+                try {
+                    active = newSegment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to rotate event spool segment", e);
+                }
+                segments.addLast(active);
+            }
+            int position = active.writePosition;
+            active.buffer.put(position + HEADER_BYTES, payload);
+            active.buffer.putInt(position + 4, (int) crc.getValue());
+            // The length goes last: until it is written the record reads as end of segment
+            active.buffer.putInt(position, payload.length);
+            active.writePosition = position + recordSize;
+        }
+        spooled.increment();
+    }
+
+    /**
+     * Replay spooled events until the spool is empty or the table pushes back.
+     *
+     * @return the number of events written to the table
+     */
+    public long replayNow() {
+        synchronized (replayLock) {
+            long written = 0;
+            while (true) {
+                Segment segment;
+                int limit;
+                boolean sealed;
+                synchronized (this) {
+                    segment = segments.peekFirst();
+                    limit = segment.writePosition;
+                    sealed = segment.sealed;
+                }
+                List<EventEntity> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+                int batchEnd = readBatch(segment, limit, batch);
+                if (batch.isEmpty()) {
+                    if (sealed && segment.readPosition >= limit && dropSegment(segment)) {
+                        continue;
+                    }
+                    return written;
+                }
+                List<EventEntity> unwritten;
+                try {
+                    unwritten = eventService.writeEvents(batch);
+                } catch (RuntimeException e) {
+                    log.warn("Replay of spooled events failed, retrying in {}", replayInterval, e);
+                    return written;
+                }
+                if (!unwritten.isEmpty()) {
+                    // Capacity is not back yet; the whole batch is replayed again later
+                    log.info("Table still throttles, {} spooled events wait for the next replay",
+                            unwritten.size());
+                    return written;
+                }
+                segment.readPosition = batchEnd;
+                written += batch.size();
+                replayed.add(batch.size());
+            }
+        }
+    }
+
+    // Reads up to REPLAY_BATCH_SIZE records after the segment's read position.
+    // Returns the position after the last record read.
+    private int readBatch(Segment segment, int limit, List<EventEntity> batch) {
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.readPosition;
+        while (batch.size() < REPLAY_BATCH_SIZE && position + HEADER_BYTES <= limit) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > limit) {
+                corruptTail(segment, position, limit);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                corruptTail(segment, position, limit);
+                break;
+            }
+            batch.add(decode(payload));
+            position += HEADER_BYTES + length;
+        }
+        return batch.isEmpty() ? segment.readPosition : position;
+    }
+
+    private void corruptTail(Segment segment, int position, int limit) {
+        log.warn("Skipping corrupt spool records in {} from offset {}", segment.path, position);
+        corrupted.increment();
+        segment.readPosition = limit;
+    }
+
+    // Returns false if the segment is the only one left and therefore kept
+    private boolean dropSegment(Segment segment) {
+        synchronized (this) {
+            if (segments.size() == 1) {
+                return false;
+            }
+            segments.removeFirst();
+        }
+        try {
+            Files.deleteIfExists(segment.path);
+            log.info("Replayed and deleted spool segment {}", segment.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete replayed spool segment {}", segment.path, e);
+        }
+        return true;
+    }
+
+    private void replayLoop() {
+        while (running) {
+            try {
+                replayNow();
+            } catch (RuntimeException e) {
+                log.warn("Spool replay failed", e);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(replayInterval.toNanos());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of events appended since the spool was opened
+     */
+    public long spooledCount() {
+        return spooled.sum();
+    }
+
+    /**
+     * @return the number of events replayed to the table since the spool was opened
+     */
+    public long replayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * @return the number of times a corrupt record cut a segment short
+     */
+    public long corruptedCount() {
+        return corrupted.sum();
+    }
+
+    /**
+     * @return the number of segment files, including the one taking appends
+     */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Stop the replayer and flush the active segment. Events not replayed yet stay on disk
+     * and are replayed by the next spool opened on the same directory.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            segments.forEach(segment -> segment.buffer.force());
+        }
+        replayer.interrupt();
+        try {
+            replayer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recoverSegments() throws IOException {
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path path : existing) {
+            Segment segment = Segment.map(path, (int) Files.size(path), false);
+            segment.writePosition = validEnd(segment.buffer);
+            segment.sealed = true;
+            segments.addLast(segment);
+            nextSegmentId = Math.max(nextSegmentId, segmentId(path) + 1);
+            log.info("Recovered spool segment {} with {} bytes to replay", path,
+                    segment.writePosition);
+        }
+    }
+
+    // End of the last complete, CRC-valid record of a recovered segment
+    private static int validEnd(ByteBuffer buffer) {
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private Segment newSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s",
+                SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        return Segment.map(path, segmentSize, true);
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] encode(EventEntity event) {
+        String[] fields = {
+                event.getPk(), event.getSk(), event.getEventId(), event.getShardKey(),
+                event.getEventType(), event.getTypeShard(), event.getEventData()
+        };
+        byte[][] encoded = new byte[fields.length][];
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i] == null ? null : fields[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] field : encoded) {
+            // -1 marks a null attribute
+            buffer.putInt(field == null ? -1 : field.length);
+            if (field != null) {
+                buffer.put(field);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static EventEntity decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        EventEntity event = new EventEntity();
+        event.setPk(readString(buffer));
+        event.setSk(readString(buffer));
+        event.setEventId(readString(buffer));
+        event.setShardKey(readString(buffer));
+        event.setEventType(readString(buffer));
+        event.setTypeShard(readString(buffer));
+        event.setEventData(readString(buffer));
+        return event;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        // Guarded by the spool
+        int writePosition;
+        boolean sealed;
+        // Only touched by the replay
+        int readPosition;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path path, int size, boolean create) throws IOException {
+            StandardOpenOption[] options = create
+                    ? new StandardOpenOption[] {StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE}
+                    : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+            // The mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, options)) {
+                return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        void seal() {
+            buffer.force();
+            sealed = true;
+        }
+    }
+}
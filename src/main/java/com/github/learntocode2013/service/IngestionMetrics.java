@@ -0,0 +1,23 @@
+package com.github.learntocode2013.service;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Point-in-time counters of an {@link EventIngestor}.
+ */
+@Value
+@Builder
+public class IngestionMetrics {
+    long submitted;
+    long written;
+    long dropped;
+    long spilled;
+    long failed;
+    // Events buffered but not yet handed to a batch write
+    int queueDepth;
+    // From submit() to the acknowledged batch write
+    Duration averageLatency;
+    Duration maxLatency;
+}
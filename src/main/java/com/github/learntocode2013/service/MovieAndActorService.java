@@ -2,27 +2,45 @@ package com.github.learntocode2013.service;
 
 import com.github.learntocode2013.model.MovieAndActor;
 import com.github.learntocode2013.model.MovieAndActor.Genre;
+import com.github.learntocode2013.util.CompositeCursor;
+import com.github.learntocode2013.util.CursorPage;
 import com.github.learntocode2013.util.ItemBasedAction;
 import com.github.learntocode2013.util.ItemCollectionAction;
+import com.github.learntocode2013.util.IndexSpec;
+import com.github.learntocode2013.util.ItemCount;
 import com.github.learntocode2013.util.Operations;
+import com.github.learntocode2013.util.ShardFanOut;
+import com.github.learntocode2013.util.TableSpec;
+import com.github.learntocode2013.util.WholeTableAction;
 import io.vavr.control.Try;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.DescribeTableEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedResponse;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.TimeToLiveSpecification;
@@ -33,18 +51,45 @@ public class MovieAndActorService {
   private static final Logger log = LoggerFactory.getLogger(MovieAndActorService.class);
   private static final String TABLE_NAME = "MoviesAndActors";
   private static final String TTL_ATTRIBUTE_NAME = "ttl";
+  public static final String MOVIE_INDEX = "gsi_movie_pk";
+  public static final int DEFAULT_MAX_CONCURRENT_MOVIES = 8;
+  private static final Duration CAST_QUERY_DEADLINE = Duration.ofSeconds(30);
+  public static final int MAX_PAGE_SIZE = 100;
+  // Bounds what one page reads when a selective filter drops most of what a request returns
+  private static final int MAX_QUERIES_PER_PAGE = 4;
+  // Cast lookups and graph traversals read keys, role and year only, so the index does not
+  // carry a copy of every attribute of every item
+  private static final IndexSpec MOVIE_INDEX_SPEC = IndexSpec.include(MOVIE_INDEX, "role", "year");
+  static final TableSpec TABLE_SPEC = TableSpec.builder()
+      .globalIndex(MOVIE_INDEX_SPEC)
+      .build();
   private final DynamoDbEnhancedClient enhancedClient;
   private final DynamoDbTable<MovieAndActor> table;
+  // What a movie index query can return: the table and index keys and the projected attributes
+  private final Set<String> movieIndexAttributes;
 
   public MovieAndActorService(DynamoDbEnhancedClient enhancedClient) {
     this.enhancedClient = enhancedClient;
     this.table = enhancedClient.table(
         TABLE_NAME,
         TableSchema.fromImmutableClass(MovieAndActor.class));
+    TableMetadata metadata = table.tableSchema().tableMetadata();
+    Set<String> projected = new LinkedHashSet<>();
+    projected.add(metadata.primaryPartitionKey());
+    metadata.primarySortKey().ifPresent(projected::add);
+    projected.add(metadata.indexPartitionKey(MOVIE_INDEX));
+    metadata.indexSortKey(MOVIE_INDEX).ifPresent(projected::add);
+    projected.addAll(MOVIE_INDEX_SPEC.getNonKeyAttributes());
+    this.movieIndexAttributes = Set.copyOf(projected);
   }
 
   public Try<DescribeTableEnhancedResponse> createTableIfNotExists() {
-    return Operations.createTableIfNotExists(table, TABLE_NAME, log);
+    return Operations.createTableIfNotExists(table, TABLE_NAME, TABLE_SPEC, log);
+  }
+
+  @WholeTableAction
+  public Try<List<String>> reconcileTable(DynamoDbClient dynamoDbClient) {
+    return Operations.reconcileTable(dynamoDbClient, table, TABLE_SPEC, log);
   }
 
   public Try<UpdateTimeToLiveResponse> enableTtl(DynamoDbClient dynamoDbClient) {
@@ -169,4 +214,235 @@ public class MovieAndActorService {
         })
     .onFailure(err -> {log.error("Query operation failed for partition: {}", pKey, err);});
   }
+
+  /**
+   * One page of an actor's movies, optionally of one genre and with only some attributes.
+   * With a genre the page may hold fewer than {@code pageSize} items, or none, while
+   * {@link CursorPage#hasMore()} is true: a page stops after a few requests rather than
+   * reading a large partition for a rare genre.
+   *
+   * @param genre only movies of this genre, or null for all of them
+   * @param attributes the attributes to return, or null/empty for whole items
+   * @param pageSize the maximum number of items returned, at most {@link #MAX_PAGE_SIZE}
+   * @param cursor the {@code nextCursor} of the previous page, or null for the first page
+   */
+  @ItemCollectionAction
+  public Try<CursorPage<MovieAndActor>> queryMoviesOfActor(
+      String actor,
+      Genre genre,
+      List<String> attributes,
+      int pageSize,
+      String cursor) {
+    var qc = QueryConditional.keyEqualTo(Key.builder().partitionValue(actor).build());
+    return Try.of(() -> page(qc, genreFilter(genre), attributes, pageSize, cursor,
+            "ACTOR#" + actor + "#GENRE#" + genre))
+        .onFailure(err -> log.error("Failed to fetch a page of movies for partition key:"
+            + " {} | filter: {}", actor, genre, err));
+  }
+
+  /**
+   * One page of an actor's movies whose titles lie between the two prefixes.
+   *
+   * @see #queryMoviesOfActor(String, Genre, List, int, String)
+   */
+  @ItemCollectionAction
+  public Try<CursorPage<MovieAndActor>> queryMoviesOfActorByTitle(
+      String actor,
+      String fromTitlePrefix,
+      String toTitlePrefix,
+      int pageSize,
+      String cursor) {
+    var qc = QueryConditional.sortBetween(
+        Key.builder().partitionValue(actor).sortValue(fromTitlePrefix).build(),
+        Key.builder().partitionValue(actor).sortValue(toTitlePrefix).build());
+    return Try.of(() -> page(qc, null, null, pageSize, cursor,
+            "ACTOR#" + actor + "#TITLES#" + fromTitlePrefix + "#" + toTitlePrefix))
+        .onFailure(err -> log.error("Failed to fetch a page of titles for partition: {}",
+            actor, err));
+  }
+
+  /**
+   * The first {@code n} movies of an actor, read page by page for any {@code n}. Stops
+   * reading the partition once {@code n} items were found; with a genre that few of the
+   * actor's movies have, that can still mean reading the whole partition.
+   */
+  @ItemCollectionAction
+  public Try<List<MovieAndActor>> queryFirstMoviesOfActor(String actor, Genre genre, int n) {
+    return Try.of(() -> {
+      List<MovieAndActor> movies = new ArrayList<>();
+      String cursor = null;
+      do {
+        CursorPage<MovieAndActor> page = queryMoviesOfActor(actor, genre, null,
+            Math.min(MAX_PAGE_SIZE, n - movies.size()), cursor).get();
+        movies.addAll(page.getItems());
+        cursor = page.getNextCursor();
+      } while (cursor != null && movies.size() < n);
+      return List.copyOf(movies);
+    });
+  }
+
+  // Reads pages until pageSize items matched, the partition ends or MAX_QUERIES_PER_PAGE
+  // requests were made. Each request is limited to the items still missing, so at most
+  // pageSize items are read without a filter, and no matched item is ever dropped: the
+  // cursor is always DynamoDB's own LastEvaluatedKey.
+  private CursorPage<MovieAndActor> page(
+      QueryConditional qc,
+      Expression filter,
+      List<String> attributes,
+      int pageSize,
+      String cursor,
+      String scope) {
+    if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException(
+          "Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + pageSize);
+    }
+    CompositeCursor position = CompositeCursor.decode(cursor, scope);
+    if (position.isExhausted(0)) {
+      return new CursorPage<>(List.of(), null);
+    }
+    Map<String, AttributeValue> startKey = position.resumeKey(0).orElse(null);
+    List<MovieAndActor> items = new ArrayList<>(pageSize);
+    int queries = 0;
+    do {
+      var request = QueryEnhancedRequest.builder()
+          .queryConditional(qc)
+          .filterExpression(filter)
+          .exclusiveStartKey(startKey)
+          .limit(pageSize - items.size());
+      if (attributes != null && !attributes.isEmpty()) {
+        request.attributesToProject(attributes);
+      }
+      Page<MovieAndActor> page = table.query(request.build()).iterator().next();
+      items.addAll(page.items());
+      startKey = page.lastEvaluatedKey();
+    } while (startKey != null && items.size() < pageSize && ++queries < MAX_QUERIES_PER_PAGE);
+    String nextCursor = startKey == null
+        ? null
+        : position.withResumeKey(0, startKey).encode();
+    return new CursorPage<>(List.copyOf(items), nextCursor);
+  }
+
+  private static Expression genreFilter(Genre genre) {
+    if (genre == null) {
+      return null;
+    }
+    return Expression.builder()
+        .expression("#genre = :genre")
+        .expressionNames(Map.of("#genre", "genre"))
+        .expressionValues(Map.of(":genre", AttributeValue.fromS(genre.name())))
+        .build();
+  }
+
+  // Number of movies of an actor, optionally of one genre, without transferring any item
+  @ItemCollectionAction
+  public Try<ItemCount> countMoviesOfActor(
+      DynamoDbClient dynamoDbClient,
+      String actor,
+      Genre genre) {
+    Map<String, String> names = new HashMap<>(Map.of("#actor", "actor"));
+    Map<String, AttributeValue> values =
+        new HashMap<>(Map.of(":actor", AttributeValue.fromS(actor)));
+    var request = QueryRequest.builder()
+        .tableName(TABLE_NAME)
+        .keyConditionExpression("#actor = :actor");
+    if (genre != null) {
+      names.put("#genre", "genre");
+      values.put(":genre", AttributeValue.fromS(genre.name()));
+      request.filterExpression("#genre = :genre");
+    }
+    request.expressionAttributeNames(names).expressionAttributeValues(values);
+    return Try.of(() -> Operations.countItems(dynamoDbClient, request.build()))
+        .onSuccess(count -> log.info("{} has {} movies of genre {}, {} read",
+            actor, count.getCount(), genre, count.getScannedCount()))
+        .onFailure(err -> log.error("Failed to count the movies of: {}", actor, err));
+  }
+
+  // Movies per genre of an actor. A COUNT per genre would read the partition once per genre,
+  // so this reads it once, sending back only the genre of each item.
+  @ItemCollectionAction
+  public Try<Map<Genre, Long>> countMoviesPerGenre(DynamoDbClient dynamoDbClient, String actor) {
+    var request = QueryRequest.builder()
+        .tableName(TABLE_NAME)
+        .keyConditionExpression("#actor = :actor")
+        .projectionExpression("#genre")
+        .expressionAttributeNames(Map.of("#actor", "actor", "#genre", "genre"))
+        .expressionAttributeValues(Map.of(":actor", AttributeValue.fromS(actor)))
+        .build();
+    return Try.of(() -> {
+          Map<Genre, Long> counts = new EnumMap<>(Genre.class);
+          dynamoDbClient.queryPaginator(request).items().stream()
+              .map(item -> item.get("genre"))
+              .filter(genre -> genre != null && genre.s() != null)
+              .forEach(genre -> counts.merge(Genre.valueOf(genre.s()), 1L, Long::sum));
+          return counts;
+        })
+        .onFailure(err -> log.error("Failed to count the genres of: {}", actor, err));
+  }
+
+  // Cast of a movie via the movie-keyed index instead of a scan. The index only holds actor,
+  // movie, role and year, see TABLE_SPEC: null or empty attributes return those, genre and ttl
+  // are never returned, and asking for an attribute the index does not hold fails.
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MOVIE_INDEX
+  )
+  public Try<List<MovieAndActor>> queryCastOfMovie(String movie, List<String> attributes) {
+    return Try.of(() -> castOf(movie, attributes))
+        .onSuccess(cast -> log.info("Found {} cast members of {}", cast.size(), movie))
+        .onFailure(err -> log.error("Failed to query the cast of: {}", movie, err));
+  }
+
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MOVIE_INDEX
+  )
+  public Try<Map<String, List<MovieAndActor>>> queryCastOfMovies(
+      Collection<String> movies,
+      List<String> attributes) {
+    return queryCastOfMovies(movies, attributes, DEFAULT_MAX_CONCURRENT_MOVIES);
+  }
+
+  // One index query per distinct movie, at most maxConcurrency in flight. Results keep the
+  // order in which the movies were passed; any failing query fails the whole lookup.
+  // Attributes are limited to the index's as in queryCastOfMovie.
+  @ItemCollectionAction(
+      operationOnBaseTable = false,
+      secondaryIndexName = MOVIE_INDEX
+  )
+  public Try<Map<String, List<MovieAndActor>>> queryCastOfMovies(
+      Collection<String> movies,
+      List<String> attributes,
+      int maxConcurrency) {
+    List<String> distinctMovies = List.copyOf(new LinkedHashSet<>(movies));
+    return Try.of(() -> {
+          try (var fanOut = ShardFanOut.virtualThreads(maxConcurrency, CAST_QUERY_DEADLINE)) {
+            List<List<MovieAndActor>> casts = fanOut.invokeAll(distinctMovies.stream()
+                .<Callable<List<MovieAndActor>>>map(movie -> () -> castOf(movie, attributes))
+                .toList());
+            Map<String, List<MovieAndActor>> castByMovie = new LinkedHashMap<>();
+            for (int i = 0; i < distinctMovies.size(); i++) {
+              castByMovie.put(distinctMovies.get(i), casts.get(i));
+            }
+            return castByMovie;
+          }
+        })
+        .onSuccess(casts -> log.info("Fetched the cast of {} movies", casts.size()))
+        .onFailure(err -> log.error("Failed to query the cast of movies: {}", distinctMovies, err));
+  }
+
+  private List<MovieAndActor> castOf(String movie, List<String> attributes) {
+    if (attributes != null && !movieIndexAttributes.containsAll(attributes)) {
+      throw new IllegalArgumentException(String.format(
+          "%s only projects %s, not all of %s", MOVIE_INDEX, movieIndexAttributes, attributes));
+    }
+    var request = QueryEnhancedRequest.builder()
+        .queryConditional(QueryConditional.keyEqualTo(
+            Key.builder().partitionValue(movie).build()));
+    if (attributes != null && !attributes.isEmpty()) {
+      request.attributesToProject(attributes);
+    }
+    return table.index(MOVIE_INDEX).query(request.build()).stream()
+        .flatMap(page -> page.items().stream())
+        .toList();
+  }
 }
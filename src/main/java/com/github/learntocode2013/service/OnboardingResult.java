@@ -0,0 +1,30 @@
+package com.github.learntocode2013.service;
+
+import lombok.Value;
+
+/**
+ * Outcome of onboarding one tenant.
+ */
+@Value
+public class OnboardingResult {
+  public enum Outcome {
+    // Tenant and admin were written, or an earlier attempt with the same token wrote them
+    ONBOARDED,
+    // The tenant or its admin existed already; nothing was written
+    ALREADY_EXISTS,
+    // Nothing was written; see the error
+    FAILED,
+    // Did not finish before the deadline and may or may not have been written; the same
+    // onboarding can be run again safely
+    UNKNOWN
+  }
+
+  String tenantPk;
+  Outcome outcome;
+  // Null unless the onboarding failed or its outcome is unknown
+  String error;
+
+  public boolean isOnboarded() {
+    return outcome == Outcome.ONBOARDED;
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.learntocode2013.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Strategy used to pick the write shard of a sharded partition key.
+ */
+public enum ShardStrategy {
+    /**
+     * Spreads writes uniformly at random. Reads of a single item must query every shard.
+     */
+    RANDOM {
+        @Override
+        public int shardFor(String shardKey, int shardCount) {
+            return ThreadLocalRandom.current().nextInt(shardCount);
+        }
+    },
+
+    /**
+     * Derives the shard from a hash of the shard key, so all writes for a key land on the same
+     * shard and a lookup by that key touches exactly one partition.
+     */
+    HASHED {
+        @Override
+        public int shardFor(String shardKey, int shardCount) {
+            // String.hashCode is stable across JVMs; the finalizer spreads keys that only differ
+            // in their last characters (sequential ids) over all shards.
+            int h = shardKey.hashCode();
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return Math.floorMod(h, shardCount);
+        }
+    };
+
+    /**
+     * Pick a shard in the range [0, shardCount).
+     *
+     * @param shardKey the key the shard is derived from (ignored by {@link #RANDOM})
+     * @param shardCount the number of shards available
+     * @return the shard id
+     */
+    public abstract int shardFor(String shardKey, int shardCount);
+
+    /**
+     * @return true if the same key always maps to the same shard for a given shard count
+     */
+    public boolean isDeterministic() {
+        return this != RANDOM;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.learntocode2013.service;
+
+import com.github.learntocode2013.model.BillingAdmin;
+import com.github.learntocode2013.model.SaasAppInfo;
+import lombok.Value;
+
+/**
+ * A tenant and its admin item, written together by
+ * {@link BillingService#onboardTenants(java.util.List, int)}.
+ */
+@Value
+public class TenantOnboarding {
+  SaasAppInfo tenant;
+  BillingAdmin admin;
+}
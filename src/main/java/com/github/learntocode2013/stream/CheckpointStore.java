@@ -0,0 +1,22 @@
+package com.github.learntocode2013.stream;
+
+import java.util.Optional;
+
+/**
+ * Remembers how far a {@link StreamConsumer} got in each shard of a stream.
+ */
+public interface CheckpointStore {
+  /**
+   * @return the sequence number of the last record handled in the shard
+   */
+  Optional<String> sequenceNumber(String streamArn, String shardId);
+
+  void saveSequenceNumber(String streamArn, String shardId, String sequenceNumber);
+
+  /**
+   * @return true once every record of the closed shard was handled
+   */
+  boolean isFinished(String streamArn, String shardId);
+
+  void markFinished(String streamArn, String shardId);
+}
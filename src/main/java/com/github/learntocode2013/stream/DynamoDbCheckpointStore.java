@@ -0,0 +1,63 @@
+package com.github.learntocode2013.stream;
+
+import com.github.learntocode2013.model.StreamCheckpoint;
+import com.github.learntocode2013.util.Operations;
+import io.vavr.control.Try;
+import java.time.Instant;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.DescribeTableEnhancedResponse;
+
+/**
+ * Checkpoints kept in a DynamoDB table, one item per stream shard, so a restarted consumer
+ * resumes after the last handled record. There is no lease: only one consumer may run per
+ * stream at a time.
+ */
+public class DynamoDbCheckpointStore implements CheckpointStore {
+  private static final Logger log = LoggerFactory.getLogger(DynamoDbCheckpointStore.class);
+  public static final String TABLE_NAME = "StreamCheckpoints";
+  private final DynamoDbTable<StreamCheckpoint> table;
+
+  public DynamoDbCheckpointStore(DynamoDbEnhancedClient enhancedClient) {
+    this.table = enhancedClient.table(TABLE_NAME, TableSchema.fromBean(StreamCheckpoint.class));
+  }
+
+  public Try<DescribeTableEnhancedResponse> createTableIfNotExists() {
+    return Operations.createTableIfNotExists(table, TABLE_NAME, log);
+  }
+
+  @Override
+  public Optional<String> sequenceNumber(String streamArn, String shardId) {
+    return load(streamArn, shardId).map(StreamCheckpoint::getSequenceNumber);
+  }
+
+  @Override
+  public void saveSequenceNumber(String streamArn, String shardId, String sequenceNumber) {
+    table.putItem(new StreamCheckpoint(streamArn, shardId, sequenceNumber, false, Instant.now()));
+  }
+
+  @Override
+  public boolean isFinished(String streamArn, String shardId) {
+    return load(streamArn, shardId)
+        .map(checkpoint -> Boolean.TRUE.equals(checkpoint.getFinished()))
+        .orElse(false);
+  }
+
+  @Override
+  public void markFinished(String streamArn, String shardId) {
+    String sequenceNumber = sequenceNumber(streamArn, shardId).orElse(null);
+    table.putItem(new StreamCheckpoint(streamArn, shardId, sequenceNumber, true, Instant.now()));
+  }
+
+  private Optional<StreamCheckpoint> load(String streamArn, String shardId) {
+    return Optional.ofNullable(table.getItem(Key.builder()
+        .partitionValue(streamArn)
+        .sortValue(shardId)
+        .build()));
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.learntocode2013.stream;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checkpoints that live as long as the process; a restarted consumer starts over from the
+ * configured initial position.
+ */
+public class InMemoryCheckpointStore implements CheckpointStore {
+  private final Map<String, String> sequenceNumbers = new ConcurrentHashMap<>();
+  private final Set<String> finishedShards = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Optional<String> sequenceNumber(String streamArn, String shardId) {
+    return Optional.ofNullable(sequenceNumbers.get(key(streamArn, shardId)));
+  }
+
+  @Override
+  public void saveSequenceNumber(String streamArn, String shardId, String sequenceNumber) {
+    sequenceNumbers.put(key(streamArn, shardId), sequenceNumber);
+  }
+
+  @Override
+  public boolean isFinished(String streamArn, String shardId) {
+    return finishedShards.contains(key(streamArn, shardId));
+  }
+
+  @Override
+  public void markFinished(String streamArn, String shardId) {
+    finishedShards.add(key(streamArn, shardId));
+  }
+
+  private static String key(String streamArn, String shardId) {
+    return streamArn + "|" + shardId;
+  }
+}
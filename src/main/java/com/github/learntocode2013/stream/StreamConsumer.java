@@ -0,0 +1,318 @@
+package com.github.learntocode2013.stream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.model.StreamSpecification;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TrimmedDataAccessException;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * Reads the change stream of a table and hands the records to a {@link StreamRecordHandler}.
+ *
+ * <p>A discovery loop describes the stream periodically and starts one virtual-thread worker
+ * per shard. Open shards are always read, since their workers only end when the shard is
+ * closed; {@code maxConcurrentShards} limits the closed shards read at the same time, the
+ * backlog left behind by splits or a consumer that was down. A worker reads its shard in
+ * order, hands every non-empty GetRecords batch to the handler (retrying the same batch until
+ * it succeeds) and checkpoints the last sequence number after each batch. A shard that is closed by a
+ * split is read to its end and marked finished; its children are only started after that,
+ * which keeps the records of an item in order across splits. Delivery is at-least-once.
+ */
+public class StreamConsumer implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(StreamConsumer.class);
+  private final DynamoDbStreamsClient streamsClient;
+  private final String streamArn;
+  private final StreamRecordHandler handler;
+  private final CheckpointStore checkpoints;
+  private final StreamConsumerConfig config;
+  private final Map<String, Thread> workers = new ConcurrentHashMap<>();
+  private final Semaphore shardSlots;
+  private final Object discoverySignal = new Object();
+  private volatile boolean running;
+  private Thread discovery;
+
+  public StreamConsumer(DynamoDbStreamsClient streamsClient, String streamArn,
+      StreamRecordHandler handler, CheckpointStore checkpoints) {
+    this(streamsClient, streamArn, handler, checkpoints, StreamConsumerConfig.builder().build());
+  }
+
+  public StreamConsumer(DynamoDbStreamsClient streamsClient, String streamArn,
+      StreamRecordHandler handler, CheckpointStore checkpoints, StreamConsumerConfig config) {
+    if (config.getMaxConcurrentShards() < 1) {
+      throw new IllegalArgumentException("At least one shard has to be read at a time");
+    }
+    this.streamsClient = streamsClient;
+    this.streamArn = streamArn;
+    this.handler = handler;
+    this.checkpoints = checkpoints;
+    this.config = config;
+    this.shardSlots = new Semaphore(config.getMaxConcurrentShards());
+  }
+
+  /**
+   * Enable the stream of a table unless it already has one. An existing stream is only
+   * reused if its records carry at least what {@code viewType} asks for.
+   *
+   * @return the ARN of the table's latest stream
+   * @throws IllegalStateException if the table's stream has a view type lacking the images
+   *     {@code viewType} asks for; a handler expecting them would fail on every record
+   */
+  public static String enableStream(DynamoDbClient dynamoDbClient, String tableName,
+      StreamViewType viewType) {
+    TableDescription table = dynamoDbClient.describeTable(r -> r.tableName(tableName)).table();
+    StreamSpecification current = table.streamSpecification();
+    if (current != null && Boolean.TRUE.equals(current.streamEnabled())) {
+      if (!covers(current.streamViewType(), viewType)) {
+        throw new IllegalStateException(String.format(
+            "The stream of %s has view type %s, but %s is needed",
+            tableName, current.streamViewType(), viewType));
+      }
+      return table.latestStreamArn();
+    }
+    return dynamoDbClient.updateTable(r -> r
+            .tableName(tableName)
+            .streamSpecification(s -> s.streamEnabled(true).streamViewType(viewType)))
+        .tableDescription()
+        .latestStreamArn();
+  }
+
+  // Whether records of the existing view type contain everything the requested one does
+  static boolean covers(StreamViewType existing, StreamViewType requested) {
+    return existing == requested
+        || requested == StreamViewType.KEYS_ONLY
+        || existing == StreamViewType.NEW_AND_OLD_IMAGES
+        && (requested == StreamViewType.NEW_IMAGE || requested == StreamViewType.OLD_IMAGE);
+  }
+
+  /**
+   * Start reading the stream. Returns immediately; shards are read in the background.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    discovery = Thread.ofPlatform()
+        .name("stream-discovery")
+        .daemon(true)
+        .start(this::discoveryLoop);
+  }
+
+  /**
+   * @return the ids of the shards being read right now
+   */
+  public Set<String> activeShards() {
+    return Set.copyOf(workers.keySet());
+  }
+
+  private void discoveryLoop() {
+    while (running) {
+      try {
+        discoverShards();
+      } catch (SdkException e) {
+        log.warn("Failed to describe stream {}", streamArn, e);
+      }
+      synchronized (discoverySignal) {
+        try {
+          discoverySignal.wait(Math.max(1, config.getShardDiscoveryInterval().toMillis()));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void discoverShards() {
+    List<Shard> shards = describeShards();
+    Set<String> shardIds = shards.stream().map(Shard::shardId).collect(Collectors.toSet());
+    for (Shard shard : shards) {
+      String shardId = shard.shardId();
+      if (!running || workers.containsKey(shardId) || checkpoints.isFinished(streamArn, shardId)) {
+        continue;
+      }
+      // A parent that is still listed has to be read to its end before its children
+      String parentId = shard.parentShardId();
+      if (parentId != null && shardIds.contains(parentId)
+          && !checkpoints.isFinished(streamArn, parentId)) {
+        continue;
+      }
+      // An open shard would hold its slot until it is closed and starve the shards behind it
+      boolean slotted = isClosed(shard);
+      if (slotted && !shardSlots.tryAcquire()) {
+        log.debug("All {} shard slots busy, {} waits", config.getMaxConcurrentShards(), shardId);
+        continue;
+      }
+      Thread worker = Thread.ofVirtual()
+          .name("stream-shard-" + shardId)
+          .unstarted(() -> consumeShard(shardId, slotted));
+      workers.put(shardId, worker);
+      worker.start();
+    }
+  }
+
+  private static boolean isClosed(Shard shard) {
+    return shard.sequenceNumberRange() != null
+        && shard.sequenceNumberRange().endingSequenceNumber() != null;
+  }
+
+  private List<Shard> describeShards() {
+    List<Shard> shards = new ArrayList<>();
+    String lastShardId = null;
+    do {
+      String exclusiveStart = lastShardId;
+      DescribeStreamResponse response = streamsClient.describeStream(r -> r
+          .streamArn(streamArn)
+          .exclusiveStartShardId(exclusiveStart));
+      shards.addAll(response.streamDescription().shards());
+      lastShardId = response.streamDescription().lastEvaluatedShardId();
+    } while (lastShardId != null);
+    return shards;
+  }
+
+  private void consumeShard(String shardId, boolean slotted) {
+    try {
+      readShard(shardId);
+    } catch (RuntimeException e) {
+      if (running) {
+        log.warn("Reading shard {} failed, the next discovery picks it up again", shardId, e);
+      }
+    } finally {
+      workers.remove(shardId);
+      if (slotted) {
+        shardSlots.release();
+      }
+      // A finished parent unblocks its children, a free slot unblocks waiting shards
+      synchronized (discoverySignal) {
+        discoverySignal.notifyAll();
+      }
+    }
+  }
+
+  private void readShard(String shardId) {
+    String iterator = initialIterator(shardId);
+    while (running && iterator != null) {
+      String current = iterator;
+      GetRecordsResponse response;
+      try {
+        response = streamsClient.getRecords(r -> r
+            .shardIterator(current)
+            .limit(config.getMaxRecordsPerBatch()));
+      } catch (ExpiredIteratorException e) {
+        iterator = initialIterator(shardId);
+        continue;
+      } catch (TrimmedDataAccessException e) {
+        log.error("Records of shard {} after the checkpoint were trimmed, resuming at the "
+            + "oldest record still in the stream", shardId, e);
+        iterator = shardIterator(shardId, ShardIteratorType.TRIM_HORIZON, null);
+        continue;
+      }
+      List<Record> records = response.records();
+      if (!records.isEmpty()) {
+        if (!deliver(shardId, records)) {
+          return;
+        }
+        checkpoints.saveSequenceNumber(streamArn, shardId,
+            records.get(records.size() - 1).dynamodb().sequenceNumber());
+      }
+      iterator = response.nextShardIterator();
+      if (iterator == null) {
+        checkpoints.markFinished(streamArn, shardId);
+        log.info("Shard {} is closed and was read to its end", shardId);
+        return;
+      }
+      if (records.isEmpty() && !sleep(config.getPollInterval())) {
+        return;
+      }
+    }
+  }
+
+  // Returns false if the consumer was closed before the handler accepted the batch
+  private boolean deliver(String shardId, List<Record> records) {
+    Duration backoff = config.getInitialRetryBackoff();
+    while (running) {
+      try {
+        handler.handle(shardId, records);
+        return true;
+      } catch (RuntimeException e) {
+        log.warn("Handler failed on {} records of shard {}, retrying in {}",
+            records.size(), shardId, backoff, e);
+        if (!sleep(backoff)) {
+          return false;
+        }
+        backoff = backoff.multipliedBy(2);
+        if (backoff.compareTo(config.getMaxRetryBackoff()) > 0) {
+          backoff = config.getMaxRetryBackoff();
+        }
+      }
+    }
+    return false;
+  }
+
+  private String initialIterator(String shardId) {
+    return checkpoints.sequenceNumber(streamArn, shardId)
+        .map(sequenceNumber ->
+            shardIterator(shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER, sequenceNumber))
+        .orElseGet(() -> shardIterator(shardId, config.getInitialPosition(), null));
+  }
+
+  private String shardIterator(String shardId, ShardIteratorType type, String sequenceNumber) {
+    return streamsClient.getShardIterator(r -> r
+            .streamArn(streamArn)
+            .shardId(shardId)
+            .shardIteratorType(type)
+            .sequenceNumber(sequenceNumber))
+        .shardIterator();
+  }
+
+  private boolean sleep(Duration duration) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(duration.toMillis());
+      return running;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Stop discovery and all shard workers. Records handed to the handler after the last
+   * checkpoint are delivered again when a consumer with the same checkpoints starts.
+   */
+  @Override
+  public synchronized void close() {
+    running = false;
+    if (discovery != null) {
+      discovery.interrupt();
+      join(discovery);
+    }
+    workers.values().forEach(Thread::interrupt);
+    workers.values().forEach(StreamConsumer::join);
+  }
+
+  private static void join(Thread thread) {
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.github.learntocode2013.stream;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+
+/**
+ * Settings of a {@link StreamConsumer}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class StreamConsumerConfig {
+  // Records per GetRecords call and therefore per handler batch (DynamoDB allows 1000)
+  @Builder.Default
+  int maxRecordsPerBatch = 1000;
+  // Closed shards read at the same time; open shards are always read
+  @Builder.Default
+  int maxConcurrentShards = 16;
+  // Pause after a GetRecords call that returned nothing
+  @Builder.Default
+  Duration pollInterval = Duration.ofSeconds(1);
+  // How often the stream is described to find new shards
+  @Builder.Default
+  Duration shardDiscoveryInterval = Duration.ofSeconds(10);
+  // First and maximum pause before a failed batch is handed to the handler again
+  @Builder.Default
+  Duration initialRetryBackoff = Duration.ofMillis(100);
+  @Builder.Default
+  Duration maxRetryBackoff = Duration.ofSeconds(10);
+  // Where a shard without a checkpoint is read from: TRIM_HORIZON or LATEST
+  @Builder.Default
+  ShardIteratorType initialPosition = ShardIteratorType.TRIM_HORIZON;
+}
@@ -0,0 +1,15 @@
+package com.github.learntocode2013.stream;
+
+import java.util.List;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+
+/**
+ * Receives the change records of a table's stream, one batch of one shard at a time.
+ * Batches of a shard arrive in stream order and never concurrently; batches of different
+ * shards may arrive concurrently. A handler that throws gets the same batch again, so
+ * handlers have to be idempotent.
+ */
+@FunctionalInterface
+public interface StreamRecordHandler {
+  void handle(String shardId, List<Record> records);
+}
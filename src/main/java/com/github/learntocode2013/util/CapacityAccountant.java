@@ -0,0 +1,232 @@
+package com.github.learntocode2013.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.Capacity;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+
+/**
+ * Attributes the capacity DynamoDB reports as consumed to tenants, so the heaviest tenants of
+ * the last minutes or hours can be listed.
+ *
+ * <p>Every tenant has a ring of time buckets per resource: the total of the request, and each
+ * index it touched. A bucket is a {@link LongAdder} of thousandths of a capacity unit, so
+ * concurrent requests of the same tenant update striped cells instead of one contended
+ * counter. Recording allocates nothing once a tenant and resource have been seen; reads sum
+ * the buckets inside the window. A bucket is reset when it is reused for a newer period, and
+ * requests racing with that reset may be lost, so counts are approximate at bucket borders.
+ */
+public class CapacityAccountant {
+  public static final String TOTAL = "TOTAL";
+  public static final Duration DEFAULT_BUCKET_DURATION = Duration.ofMinutes(1);
+  public static final int DEFAULT_BUCKET_COUNT = 60;
+  private static final double MILLI_UNITS = 1000.0;
+
+  private final long bucketMillis;
+  private final int bucketCount;
+  private final LongSupplier clock;
+  // Tenant -> resource (TOTAL or index name) -> buckets
+  private final Map<String, Map<String, Buckets>> usage = new ConcurrentHashMap<>();
+
+  /**
+   * Keeps an hour of usage in one-minute buckets.
+   */
+  public CapacityAccountant() {
+    this(DEFAULT_BUCKET_DURATION, DEFAULT_BUCKET_COUNT);
+  }
+
+  /**
+   * @param bucketDuration the granularity of windows
+   * @param bucketCount the number of buckets kept; the longest window is
+   *     {@code bucketDuration * bucketCount}
+   */
+  public CapacityAccountant(Duration bucketDuration, int bucketCount) {
+    this(bucketDuration, bucketCount, System::currentTimeMillis);
+  }
+
+  CapacityAccountant(Duration bucketDuration, int bucketCount, LongSupplier clock) {
+    if (bucketDuration.toMillis() < 1 || bucketCount < 1) {
+      throw new IllegalArgumentException("Buckets must be at least a millisecond and one");
+    }
+    this.bucketMillis = bucketDuration.toMillis();
+    this.bucketCount = bucketCount;
+    this.clock = clock;
+  }
+
+  /**
+   * Attribute the capacity a request consumed to a tenant. The request has to ask for
+   * {@code ReturnConsumedCapacity.INDEXES} for the per-index breakdown; with {@code TOTAL}
+   * only the total is recorded, with {@code NONE} nothing.
+   */
+  public void record(String tenant, ConsumedCapacity consumed) {
+    if (tenant == null || consumed == null || consumed.capacityUnits() == null) {
+      return;
+    }
+    long period = clock.getAsLong() / bucketMillis;
+    Map<String, Buckets> resources = usage.get(tenant);
+    if (resources == null) {
+      resources = usage.computeIfAbsent(tenant, t -> new ConcurrentHashMap<>());
+    }
+    add(resources, TOTAL, period, consumed.capacityUnits());
+    if (consumed.hasGlobalSecondaryIndexes()) {
+      for (Map.Entry<String, Capacity> index : consumed.globalSecondaryIndexes().entrySet()) {
+        add(resources, index.getKey(), period, index.getValue().capacityUnits());
+      }
+    }
+    if (consumed.hasLocalSecondaryIndexes()) {
+      for (Map.Entry<String, Capacity> index : consumed.localSecondaryIndexes().entrySet()) {
+        add(resources, index.getKey(), period, index.getValue().capacityUnits());
+      }
+    }
+  }
+
+  /**
+   * Attribute the capacity of every table a request touched, e.g. of a transaction.
+   */
+  public void record(String tenant, List<ConsumedCapacity> consumed) {
+    if (consumed == null) {
+      return;
+    }
+    for (ConsumedCapacity capacity : consumed) {
+      record(tenant, capacity);
+    }
+  }
+
+  private void add(Map<String, Buckets> resources, String resource, long period, Double units) {
+    if (units == null) {
+      return;
+    }
+    // get() first: computeIfAbsent would allocate its capturing lambda on every request
+    Buckets buckets = resources.get(resource);
+    if (buckets == null) {
+      buckets = resources.computeIfAbsent(resource, r -> new Buckets(bucketCount));
+    }
+    buckets.add(period, Math.round(units * MILLI_UNITS));
+  }
+
+  /**
+   * @return the capacity units a tenant consumed within the window, 0 if none
+   */
+  public double usage(String tenant, Duration window) {
+    Map<String, Buckets> resources = usage.get(tenant);
+    Buckets total = resources == null ? null : resources.get(TOTAL);
+    return total == null ? 0 : total.sum(currentPeriod(), periods(window)) / MILLI_UNITS;
+  }
+
+  /**
+   * @return the capacity units of a tenant within the window by resource: {@link #TOTAL} and
+   *     every index that was reported
+   */
+  public Map<String, Double> usageByResource(String tenant, Duration window) {
+    Map<String, Double> byResource = new TreeMap<>();
+    long now = currentPeriod();
+    int periods = periods(window);
+    usage.getOrDefault(tenant, Map.of()).forEach((resource, buckets) ->
+        byResource.put(resource, buckets.sum(now, periods) / MILLI_UNITS));
+    return byResource;
+  }
+
+  /**
+   * @return the {@code k} tenants that consumed the most capacity within the window, most
+   *     first; tenants without usage in the window are left out
+   */
+  public List<TenantUsage> topTenants(int k, Duration window) {
+    if (k < 1) {
+      return List.of();
+    }
+    long now = currentPeriod();
+    int periods = periods(window);
+    PriorityQueue<TenantUsage> top =
+        new PriorityQueue<>(k + 1, Comparator.comparingDouble(TenantUsage::getCapacityUnits));
+    usage.forEach((tenant, resources) -> {
+      Buckets total = resources.get(TOTAL);
+      long milliUnits = total == null ? 0 : total.sum(now, periods);
+      if (milliUnits == 0) {
+        return;
+      }
+      top.add(new TenantUsage(tenant, milliUnits / MILLI_UNITS));
+      if (top.size() > k) {
+        top.poll();
+      }
+    });
+    List<TenantUsage> ranked = new ArrayList<>(top);
+    ranked.sort(Comparator.comparingDouble(TenantUsage::getCapacityUnits).reversed());
+    return ranked;
+  }
+
+  /**
+   * Forget tenants without usage in any kept bucket, so tenants that stopped sending
+   * requests do not hold memory forever.
+   *
+   * @return the number of tenants removed
+   */
+  public int evictIdleTenants() {
+    long now = currentPeriod();
+    int before = usage.size();
+    usage.entrySet().removeIf(entry -> entry.getValue().values().stream()
+        .allMatch(buckets -> buckets.sum(now, bucketCount) == 0));
+    return before - usage.size();
+  }
+
+  private long currentPeriod() {
+    return clock.getAsLong() / bucketMillis;
+  }
+
+  // Whole buckets covering the window, at least the current one and at most all of them
+  private int periods(Duration window) {
+    long periods = (window.toMillis() + bucketMillis - 1) / bucketMillis;
+    return (int) Math.max(1, Math.min(bucketCount, periods));
+  }
+
+  @Value
+  public static class TenantUsage {
+    String tenant;
+    double capacityUnits;
+  }
+
+  private static final class Buckets {
+    private final LongAdder[] adders;
+    // The period each bucket currently counts
+    private final AtomicLongArray periods;
+
+    Buckets(int count) {
+      adders = new LongAdder[count];
+      periods = new AtomicLongArray(count);
+      for (int i = 0; i < count; i++) {
+        adders[i] = new LongAdder();
+        periods.set(i, -1);
+      }
+    }
+
+    void add(long period, long milliUnits) {
+      int slot = (int) Math.floorMod(period, (long) adders.length);
+      long current = periods.get(slot);
+      if (current < period && periods.compareAndSet(slot, current, period)) {
+        adders[slot].reset();
+      }
+      adders[slot].add(milliUnits);
+    }
+
+    // Sum of the buckets of the last `count` periods up to and including `now`
+    long sum(long now, int count) {
+      long sum = 0;
+      for (int slot = 0; slot < adders.length; slot++) {
+        long period = periods.get(slot);
+        if (period > now - count && period <= now) {
+          sum += adders[slot].sum();
+        }
+      }
+      return sum;
+    }
+  }
+}
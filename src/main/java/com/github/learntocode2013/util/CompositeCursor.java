@@ -0,0 +1,208 @@
+package com.github.learntocode2013.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Opaque continuation token for a read that spans several partitions (e.g. the shards of a
+ * day). For every partition it records either the key to resume after or that the partition
+ * is exhausted; partitions it does not mention have not been read yet.
+ *
+ * <p>The token is URL-safe Base64 of a small binary encoding and carries a scope, such as the
+ * date being read, so that a cursor of one query is rejected by another. Only string,
+ * number and binary attributes are supported, which covers every key attribute type.
+ */
+public final class CompositeCursor {
+  private static final byte VERSION = 1;
+  private static final byte EXHAUSTED = 0;
+  private static final byte RESUME = 1;
+
+  private final String scope;
+  // Partition index -> key to resume after; an empty map marks an exhausted partition
+  private final Map<Integer, Map<String, AttributeValue>> partitions;
+
+  private CompositeCursor(String scope, Map<Integer, Map<String, AttributeValue>> partitions) {
+    this.scope = scope;
+    this.partitions = partitions;
+  }
+
+  /**
+   * @param scope identifies the query the cursor belongs to
+   * @return a cursor before the first item of every partition
+   */
+  public static CompositeCursor start(String scope) {
+    return new CompositeCursor(scope, Map.of());
+  }
+
+  /**
+   * @return the key to resume the partition after, empty if the partition was not read yet
+   *     or is exhausted
+   */
+  public Optional<Map<String, AttributeValue>> resumeKey(int partition) {
+    Map<String, AttributeValue> key = partitions.get(partition);
+    return key == null || key.isEmpty() ? Optional.empty() : Optional.of(key);
+  }
+
+  public boolean isExhausted(int partition) {
+    Map<String, AttributeValue> key = partitions.get(partition);
+    return key != null && key.isEmpty();
+  }
+
+  /**
+   * @return a copy of this cursor where the partition resumes after the given key
+   */
+  public CompositeCursor withResumeKey(int partition, Map<String, AttributeValue> key) {
+    if (key.isEmpty()) {
+      throw new IllegalArgumentException("Resume key must not be empty");
+    }
+    return with(partition, Collections.unmodifiableMap(new LinkedHashMap<>(key)));
+  }
+
+  /**
+   * @return a copy of this cursor where the partition is exhausted
+   */
+  public CompositeCursor withExhausted(int partition) {
+    return with(partition, Map.of());
+  }
+
+  private CompositeCursor with(int partition, Map<String, AttributeValue> key) {
+    Map<Integer, Map<String, AttributeValue>> copy = new TreeMap<>(partitions);
+    copy.put(partition, key);
+    return new CompositeCursor(scope, Collections.unmodifiableMap(copy));
+  }
+
+  /**
+   * @return the opaque token handed to clients
+   */
+  public String encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION);
+      out.writeUTF(scope);
+      out.writeInt(partitions.size());
+      for (Map.Entry<Integer, Map<String, AttributeValue>> partition : partitions.entrySet()) {
+        out.writeInt(partition.getKey());
+        Map<String, AttributeValue> key = partition.getValue();
+        out.writeByte(key.isEmpty() ? EXHAUSTED : RESUME);
+        out.writeInt(key.size());
+        for (Map.Entry<String, AttributeValue> attribute : key.entrySet()) {
+          out.writeUTF(attribute.getKey());
+          writeValue(out, attribute.getValue());
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * Decode a token produced by {@link #encode()}.
+   *
+   * @param token the token; null or blank means the read starts from the beginning
+   * @param expectedScope the scope of the query being resumed
+   * @throws IllegalArgumentException if the token is malformed or belongs to another query
+   */
+  public static CompositeCursor decode(String token, String expectedScope) {
+    if (token == null || token.isBlank()) {
+      return start(expectedScope);
+    }
+    CompositeCursor cursor;
+    try {
+      cursor = read(Base64.getUrlDecoder().decode(token));
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed cursor", e);
+    }
+    if (!cursor.scope.equals(expectedScope)) {
+      throw new IllegalArgumentException(
+          "Cursor of '" + cursor.scope + "' cannot resume '" + expectedScope + "'");
+    }
+    return cursor;
+  }
+
+  private static CompositeCursor read(byte[] bytes) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (in.readByte() != VERSION) {
+        throw new IllegalArgumentException("Unsupported cursor version");
+      }
+      String scope = in.readUTF();
+      Map<Integer, Map<String, AttributeValue>> partitions = new TreeMap<>();
+      int partitionCount = in.readInt();
+      for (int i = 0; i < partitionCount; i++) {
+        int partition = in.readInt();
+        byte state = in.readByte();
+        int attributeCount = in.readInt();
+        Map<String, AttributeValue> key = new LinkedHashMap<>();
+        for (int j = 0; j < attributeCount; j++) {
+          key.put(in.readUTF(), readValue(in));
+        }
+        if ((state == EXHAUSTED) != key.isEmpty()) {
+          throw new IllegalArgumentException("Partition state does not match its key");
+        }
+        partitions.put(partition, Collections.unmodifiableMap(key));
+      }
+      return new CompositeCursor(scope, Collections.unmodifiableMap(partitions));
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, AttributeValue value) throws IOException {
+    if (value.s() != null) {
+      out.writeByte('S');
+      out.writeUTF(value.s());
+    } else if (value.n() != null) {
+      out.writeByte('N');
+      out.writeUTF(value.n());
+    } else if (value.b() != null) {
+      byte[] binary = value.b().asByteArray();
+      out.writeByte('B');
+      out.writeInt(binary.length);
+      out.write(binary);
+    } else {
+      throw new IllegalArgumentException("Unsupported key attribute: " + value);
+    }
+  }
+
+  private static AttributeValue readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case 'S':
+        return AttributeValue.fromS(in.readUTF());
+      case 'N':
+        return AttributeValue.fromN(in.readUTF());
+      case 'B':
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+          throw new IllegalArgumentException("Binary attribute longer than the cursor");
+        }
+        byte[] binary = new byte[length];
+        in.readFully(binary);
+        return AttributeValue.fromB(SdkBytes.fromByteArray(binary));
+      default:
+        throw new IllegalArgumentException("Unknown attribute type " + type);
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof CompositeCursor cursor
+        && scope.equals(cursor.scope)
+        && partitions.equals(cursor.partitions);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * scope.hashCode() + partitions.hashCode();
+  }
+}
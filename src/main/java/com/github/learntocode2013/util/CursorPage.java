@@ -0,0 +1,18 @@
+package com.github.learntocode2013.util;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * One page of a paginated read and the token that resumes it.
+ */
+@Value
+public class CursorPage<T> {
+  List<T> items;
+  // Null once there is nothing left to read
+  String nextCursor;
+
+  public boolean hasMore() {
+    return nextCursor != null;
+  }
+}
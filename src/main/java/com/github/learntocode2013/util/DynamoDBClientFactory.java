@@ -6,6 +6,7 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
 
 import java.net.URI;
 
@@ -77,4 +78,30 @@ public class DynamoDBClientFactory {
     public static DynamoDbClient createLocalClient() {
         return createLocalClient("http://localhost:8000");
     }
-}
\ No newline at end of file
+
+    /**
+     * Create a DynamoDB Streams client that connects to a local DynamoDB endpoint.
+     *
+     * @param endpoint the local endpoint URL (e.g., "http://localhost:8000")
+     * @return a DynamoDbStreamsClient configured to use the local endpoint
+     */
+    public static DynamoDbStreamsClient createLocalStreamsClient(String endpoint) {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(
+            "DUMMYACCESSKEY", "DUMMYSECRETKEY");
+
+        return DynamoDbStreamsClient.builder()
+            .endpointOverride(URI.create(endpoint))
+            .region(Region.US_EAST_1)
+            .credentialsProvider(StaticCredentialsProvider.create(credentials))
+            .build();
+    }
+
+    /**
+     * Convenience method that creates a streams client for the default local DynamoDB endpoint.
+     *
+     * @return a DynamoDbStreamsClient configured for http://localhost:8000
+     */
+    public static DynamoDbStreamsClient createLocalStreamsClient() {
+        return createLocalStreamsClient("http://localhost:8000");
+    }
+}
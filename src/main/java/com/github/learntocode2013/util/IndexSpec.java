@@ -0,0 +1,65 @@
+package com.github.learntocode2013.util;
+
+import java.util.List;
+import java.util.Set;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+
+/**
+ * Declared shape of a secondary index: what it projects and, for a global index of a
+ * provisioned table, its throughput. The key attributes come from the table schema.
+ */
+@Value
+@Builder(toBuilder = true)
+public class IndexSpec {
+  String indexName;
+  @Builder.Default
+  ProjectionType projectionType = ProjectionType.ALL;
+  // Only for INCLUDE: the non-key attributes copied into the index
+  @Singular
+  List<String> nonKeyAttributes;
+  // Only for global indexes of provisioned tables
+  Long readCapacityUnits;
+  Long writeCapacityUnits;
+
+  public static IndexSpec keysOnly(String indexName) {
+    return builder().indexName(indexName).projectionType(ProjectionType.KEYS_ONLY).build();
+  }
+
+  public static IndexSpec include(String indexName, String... nonKeyAttributes) {
+    return builder()
+        .indexName(indexName)
+        .projectionType(ProjectionType.INCLUDE)
+        .nonKeyAttributes(List.of(nonKeyAttributes))
+        .build();
+  }
+
+  public static IndexSpec all(String indexName) {
+    return builder().indexName(indexName).build();
+  }
+
+  public Projection projection() {
+    if ((projectionType == ProjectionType.INCLUDE) == nonKeyAttributes.isEmpty()) {
+      throw new IllegalArgumentException(
+          indexName + ": non-key attributes go with, and only with, an INCLUDE projection");
+    }
+    return Projection.builder()
+        .projectionType(projectionType)
+        .nonKeyAttributes(nonKeyAttributes.isEmpty() ? null : nonKeyAttributes)
+        .build();
+  }
+
+  /**
+   * @return true if the index described by DynamoDB projects what this spec declares
+   */
+  public boolean matches(Projection actual) {
+    List<String> actualAttributes = actual.hasNonKeyAttributes()
+        ? actual.nonKeyAttributes()
+        : List.of();
+    return actual.projectionType() == projectionType
+        && Set.copyOf(actualAttributes).equals(Set.copyOf(nonKeyAttributes));
+  }
+}
@@ -0,0 +1,18 @@
+package com.github.learntocode2013.util;
+
+import lombok.Value;
+
+/**
+ * Result of a COUNT-only query or scan: how many items matched and how many were read to
+ * find them. The two differ by what a filter expression discarded.
+ */
+@Value
+public class ItemCount {
+  public static final ItemCount ZERO = new ItemCount(0, 0);
+  long count;
+  long scannedCount;
+
+  public ItemCount plus(ItemCount other) {
+    return new ItemCount(count + other.count, scannedCount + other.scannedCount);
+  }
+}
@@ -0,0 +1,131 @@
+package com.github.learntocode2013.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, lock-free multi-producer single-consumer ring buffer with preallocated entries.
+ * Producers claim a sequence, fill the entry in place and publish it; the consumer handles
+ * published entries in place and hands the slot back. Nothing is allocated per message.
+ * Every slot carries a sequence number that tells whose turn it is:
+ * {@code seq == pos} free for the producer of pos, {@code seq == pos + 1} published for the
+ * consumer, {@code seq == pos + capacity} free again for the next lap.
+ *
+ * <pre>{@code
+ * long seq = ring.tryClaim();
+ * if (seq >= 0) {
+ *   ring.get(seq).fill(...);
+ *   ring.publish(seq);
+ * }
+ * }</pre>
+ */
+public class MpscRingBuffer<E> {
+  private final Object[] entries;
+  private final AtomicLongArray sequences;
+  private final int capacity;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  // Only written by the consumer
+  private volatile long head;
+
+  /**
+   * @param capacity the number of slots, rounded up to a power of two of at least 2: with a
+   *     single slot, published ({@code pos + 1}) and free again ({@code pos + capacity}) would
+   *     be the same sequence
+   * @param entryFactory creates the entries every slot reuses
+   */
+  public MpscRingBuffer(int capacity, Supplier<E> entryFactory) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+    }
+    this.capacity = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.entries = new Object[this.capacity];
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      entries[i] = entryFactory.get();
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Claim the next slot.
+   *
+   * @return the claimed sequence, or -1 if the buffer is full
+   */
+  public long tryClaim() {
+    long pos = tail.get();
+    while (true) {
+      long difference = sequences.get(index(pos)) - pos;
+      if (difference == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          return pos;
+        }
+        pos = tail.get();
+      } else if (difference < 0) {
+        // The slot still holds an entry from the previous lap
+        return -1;
+      } else {
+        // Another producer claimed pos in the meantime
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * @return the entry of a claimed sequence, to be filled before {@link #publish(long)}
+   */
+  @SuppressWarnings("unchecked")
+  public E get(long sequence) {
+    return (E) entries[index(sequence)];
+  }
+
+  /**
+   * Make a claimed and filled entry visible to the consumer.
+   */
+  public void publish(long sequence) {
+    sequences.set(index(sequence), sequence + 1);
+  }
+
+  /**
+   * Hand up to {@code max} published entries, in claim order, to the handler. The handler must
+   * copy what it needs: the slot is reused once the handler returns. Single consumer only.
+   *
+   * @return the number of entries handled
+   */
+  @SuppressWarnings("unchecked")
+  public int drain(int max, Consumer<? super E> handler) {
+    long pos = head;
+    int drained = 0;
+    while (drained < max) {
+      int index = index(pos);
+      if (sequences.get(index) != pos + 1) {
+        break;
+      }
+      handler.accept((E) entries[index]);
+      sequences.set(index, pos + capacity);
+      pos++;
+      drained++;
+    }
+    head = pos;
+    return drained;
+  }
+
+  /**
+   * @return the number of claimed entries not yet drained
+   */
+  public int size() {
+    long size = tail.get() - head;
+    return (int) Math.max(0, Math.min(capacity, size));
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  private int index(long sequence) {
+    return (int) (sequence & mask);
+  }
+}
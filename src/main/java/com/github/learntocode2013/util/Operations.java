@@ -1,13 +1,49 @@
 package com.github.learntocode2013.util;
 
 import io.vavr.control.Try;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
 import software.amazon.awssdk.enhanced.dynamodb.model.DescribeTableEnhancedResponse;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexUpdate;
+import software.amazon.awssdk.services.dynamodb.model.IndexStatus;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.LocalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputDescription;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TableStatus;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 
 public class Operations {
+  private static final Duration ACTIVE_POLL_INTERVAL = Duration.ofSeconds(1);
+  private static final Duration ACTIVE_TIMEOUT = Duration.ofMinutes(30);
+  private static final Duration COUNT_SCAN_DEADLINE = Duration.ofMinutes(10);
+
   public static Try<DescribeTableEnhancedResponse> createTableIfNotExists(
       DynamoDbTable<?> table,
       String tableName,
@@ -26,4 +62,299 @@ public class Operations {
           log.warn(ex.getMessage(), ex);
         });
   }
+
+  /**
+   * Create the table with the declared billing mode, throughput and indexes if it does not
+   * exist. An existing table is left as it is; see {@link #reconcileTable}.
+   */
+  public static Try<DescribeTableEnhancedResponse> createTableIfNotExists(
+      DynamoDbTable<?> table,
+      String tableName,
+      TableSpec spec,
+      Logger log) {
+    return Try.of(
+            table::describeTable)
+        .onFailure(ex -> {
+          if (ex instanceof ResourceNotFoundException) {
+            table.createTable(spec.createTableRequest());
+            try(DynamoDbWaiter dynamoDbWaiter = DynamoDbWaiter.create()) {
+              dynamoDbWaiter.waitUntilTableExists(b -> b.tableName(tableName));
+              log.info("{} was created with {} global and {} local indexes",
+                  tableName, spec.getGlobalIndexes().size(), spec.getLocalIndexes().size());
+            }
+            return;
+          }
+          log.warn(ex.getMessage(), ex);
+        });
+  }
+
+  /**
+   * Bring an existing table in line with its spec, one UpdateTable at a time, waiting for the
+   * table and its indexes to become active after each:
+   * <ul>
+   *   <li>billing mode and the throughput of the table and its global indexes,</li>
+   *   <li>global indexes in the spec but not on the table are created.</li>
+   * </ul>
+   * Changes DynamoDB cannot make in place, or that would drop data, are only logged: a
+   * different projection (the index has to be rebuilt), missing local indexes (only at table
+   * creation) and indexes the spec does not mention (never deleted here).
+   *
+   * @return the changes applied, empty if the table already matched
+   */
+  @WholeTableAction
+  public static Try<List<String>> reconcileTable(
+      DynamoDbClient dynamoDbClient,
+      DynamoDbTable<?> table,
+      TableSpec spec,
+      Logger log) {
+    String tableName = table.tableName();
+    return Try.of(() -> {
+          List<String> changes = new ArrayList<>();
+          TableDescription current = describe(dynamoDbClient, tableName);
+          Map<String, GlobalSecondaryIndexDescription> globalIndexes = byName(
+              current.globalSecondaryIndexes(), GlobalSecondaryIndexDescription::indexName);
+
+          if (updateCapacity(dynamoDbClient, current, globalIndexes, spec)) {
+            changes.add("capacity set to " + spec.getBillingMode() + " as declared");
+            awaitActive(dynamoDbClient, tableName);
+          }
+          for (IndexSpec index : spec.getGlobalIndexes()) {
+            GlobalSecondaryIndexDescription existing = globalIndexes.get(index.getIndexName());
+            if (existing == null) {
+              createGlobalIndex(dynamoDbClient, table, index, spec);
+              changes.add("created global index " + index.getIndexName());
+              awaitActive(dynamoDbClient, tableName);
+            } else if (!index.matches(existing.projection())) {
+              log.warn("{}.{} projects {} but {} is declared; rebuild the index to change it",
+                  tableName, index.getIndexName(), existing.projection(), index.projection());
+            }
+          }
+
+          Map<String, LocalSecondaryIndexDescription> localIndexes = byName(
+              current.localSecondaryIndexes(), LocalSecondaryIndexDescription::indexName);
+          for (IndexSpec index : spec.getLocalIndexes()) {
+            LocalSecondaryIndexDescription existing = localIndexes.get(index.getIndexName());
+            if (existing == null) {
+              log.warn("{}.{} is missing; local indexes can only be created with the table",
+                  tableName, index.getIndexName());
+            } else if (!index.matches(existing.projection())) {
+              log.warn("{}.{} projects {} but {} is declared", tableName, index.getIndexName(),
+                  existing.projection(), index.projection());
+            }
+          }
+          Set<String> declared = Stream.concat(spec.getGlobalIndexes().stream(),
+                  spec.getLocalIndexes().stream())
+              .map(IndexSpec::getIndexName)
+              .collect(Collectors.toSet());
+          Stream.concat(globalIndexes.keySet().stream(), localIndexes.keySet().stream())
+              .filter(name -> !declared.contains(name))
+              .forEach(name -> log.warn("{}.{} is not declared and was left in place",
+                  tableName, name));
+          return changes;
+        })
+        .onSuccess(changes -> log.info("Reconciled {}: {}", tableName,
+            changes.isEmpty() ? "already as declared" : changes))
+        .onFailure(ex -> log.warn("Failed to reconcile {}", tableName, ex));
+  }
+
+  /**
+   * Run a query with {@code Select.COUNT}, paging through the counts only. No item is sent
+   * back, but the read capacity is the same as for reading the matched range.
+   */
+  public static ItemCount countItems(DynamoDbClient dynamoDbClient, QueryRequest request) {
+    ItemCount total = ItemCount.ZERO;
+    for (var page : dynamoDbClient.queryPaginator(request.toBuilder()
+        .select(Select.COUNT)
+        .build())) {
+      total = total.plus(new ItemCount(page.count(), page.scannedCount()));
+    }
+    return total;
+  }
+
+  /**
+   * Run a scan with {@code Select.COUNT}, split into segments read in parallel.
+   *
+   * @param totalSegments the number of segments; 1 scans sequentially
+   */
+  @WholeTableAction
+  public static ItemCount countItems(DynamoDbClient dynamoDbClient, ScanRequest request,
+      int totalSegments) {
+    if (totalSegments < 1) {
+      throw new IllegalArgumentException("At least one segment has to be scanned");
+    }
+    if (totalSegments == 1) {
+      return countSegment(dynamoDbClient, request.toBuilder().select(Select.COUNT).build());
+    }
+    List<Callable<ItemCount>> segments = IntStream.range(0, totalSegments)
+        .mapToObj(segment -> request.toBuilder()
+            .select(Select.COUNT)
+            .segment(segment)
+            .totalSegments(totalSegments)
+            .build())
+        .<Callable<ItemCount>>map(segment -> () -> countSegment(dynamoDbClient, segment))
+        .toList();
+    try (var fanOut = ShardFanOut.virtualThreads(totalSegments, COUNT_SCAN_DEADLINE)) {
+      return fanOut.invokeAll(segments).stream().reduce(ItemCount.ZERO, ItemCount::plus);
+    }
+  }
+
+  /**
+   * Run a read-modify-write until its conditional write no longer fails because another writer
+   * changed the item in between. Every attempt reads again, so its change is applied to the
+   * latest version. Attempts are spread with full-jitter exponential backoff.
+   *
+   * @param maxAttempts attempts before failing with the last conflict
+   * @param readModifyWrite one attempt, throwing {@link ConditionalCheckFailedException} on a
+   *     conflict; any other failure is not retried
+   */
+  public static <T> Try<T> retryOnConflict(int maxAttempts, Duration initialBackoff,
+      Callable<T> readModifyWrite, Logger log) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("At least one attempt has to be made");
+    }
+    return Try.of(() -> {
+      long backoffMillis = initialBackoff.toMillis();
+      for (int attempt = 1; ; attempt++) {
+        try {
+          return readModifyWrite.call();
+        } catch (ConditionalCheckFailedException conflict) {
+          if (attempt == maxAttempts) {
+            throw conflict;
+          }
+          log.debug("Conflicting write on attempt {} of {}, retrying", attempt, maxAttempts);
+          TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+          backoffMillis *= 2;
+        }
+      }
+    });
+  }
+
+  private static ItemCount countSegment(DynamoDbClient dynamoDbClient, ScanRequest request) {
+    ItemCount total = ItemCount.ZERO;
+    for (var page : dynamoDbClient.scanPaginator(request)) {
+      total = total.plus(new ItemCount(page.count(), page.scannedCount()));
+    }
+    return total;
+  }
+
+  private static BillingMode billingMode(TableDescription table) {
+    // Tables created before on-demand existed have no billing mode summary
+    return table.billingModeSummary() == null
+        ? BillingMode.PROVISIONED
+        : table.billingModeSummary().billingMode();
+  }
+
+  private static boolean sameThroughput(ProvisionedThroughputDescription actual,
+      ProvisionedThroughput declared) {
+    return actual != null
+        && Objects.equals(actual.readCapacityUnits(), declared.readCapacityUnits())
+        && Objects.equals(actual.writeCapacityUnits(), declared.writeCapacityUnits());
+  }
+
+  /**
+   * Send a single UpdateTable with whatever differs in billing mode and throughput. DynamoDB
+   * rejects throughput that would not change, so unchanged values are left out, except that
+   * switching to provisioned needs the throughput of every existing global index.
+   *
+   * @return false if nothing differed
+   */
+  private static boolean updateCapacity(DynamoDbClient dynamoDbClient, TableDescription current,
+      Map<String, GlobalSecondaryIndexDescription> globalIndexes, TableSpec spec) {
+    boolean modeChanges = billingMode(current) != spec.getBillingMode();
+    if (!modeChanges && !spec.isProvisioned()) {
+      return false;
+    }
+    ProvisionedThroughput tableThroughput = spec.tableThroughput();
+    boolean tableChanges = spec.isProvisioned()
+        && (modeChanges || !sameThroughput(current.provisionedThroughput(), tableThroughput));
+    List<GlobalSecondaryIndexUpdate> indexUpdates = spec.isProvisioned()
+        ? spec.getGlobalIndexes().stream()
+            .filter(index -> globalIndexes.containsKey(index.getIndexName()))
+            .filter(index -> modeChanges || !sameThroughput(
+                globalIndexes.get(index.getIndexName()).provisionedThroughput(),
+                spec.indexThroughput(index)))
+            .map(index -> GlobalSecondaryIndexUpdate.builder()
+                .update(u -> u
+                    .indexName(index.getIndexName())
+                    .provisionedThroughput(spec.indexThroughput(index)))
+                .build())
+            .toList()
+        : List.of();
+    if (!modeChanges && !tableChanges && indexUpdates.isEmpty()) {
+      return false;
+    }
+    dynamoDbClient.updateTable(r -> r
+        .tableName(current.tableName())
+        .billingMode(modeChanges ? spec.getBillingMode() : null)
+        .provisionedThroughput(tableChanges ? tableThroughput : null)
+        .globalSecondaryIndexUpdates(indexUpdates.isEmpty() ? null : indexUpdates));
+    return true;
+  }
+
+  private static void createGlobalIndex(DynamoDbClient dynamoDbClient, DynamoDbTable<?> table,
+      IndexSpec index, TableSpec spec) {
+    TableMetadata metadata = table.tableSchema().tableMetadata();
+    String indexName = index.getIndexName();
+    List<KeySchemaElement> keySchema = new ArrayList<>();
+    List<AttributeDefinition> attributes = new ArrayList<>();
+    String partitionKey = metadata.indexPartitionKey(indexName);
+    keySchema.add(KeySchemaElement.builder()
+        .attributeName(partitionKey)
+        .keyType(KeyType.HASH)
+        .build());
+    attributes.add(attributeDefinition(metadata, partitionKey));
+    Optional<String> sortKey = metadata.indexSortKey(indexName);
+    sortKey.ifPresent(key -> {
+      keySchema.add(KeySchemaElement.builder()
+          .attributeName(key)
+          .keyType(KeyType.RANGE)
+          .build());
+      attributes.add(attributeDefinition(metadata, key));
+    });
+    dynamoDbClient.updateTable(r -> r
+        .tableName(table.tableName())
+        .attributeDefinitions(attributes)
+        .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+            .create(c -> c
+                .indexName(indexName)
+                .keySchema(keySchema)
+                .projection(index.projection())
+                .provisionedThroughput(spec.indexThroughput(index)))
+            .build()));
+  }
+
+  private static AttributeDefinition attributeDefinition(TableMetadata metadata, String name) {
+    return AttributeDefinition.builder()
+        .attributeName(name)
+        .attributeType(metadata.scalarAttributeType(name).orElseThrow(() ->
+            new IllegalArgumentException(name + " is not a scalar key attribute")))
+        .build();
+  }
+
+  private static TableDescription describe(DynamoDbClient dynamoDbClient, String tableName) {
+    return dynamoDbClient.describeTable(r -> r.tableName(tableName)).table();
+  }
+
+  // The table waiter only covers the table; index changes are tracked per index
+  private static void awaitActive(DynamoDbClient dynamoDbClient, String tableName)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + ACTIVE_TIMEOUT.toNanos();
+    while (true) {
+      TableDescription table = describe(dynamoDbClient, tableName);
+      boolean indexesActive = table.globalSecondaryIndexes().stream()
+          .allMatch(index -> index.indexStatus() == IndexStatus.ACTIVE);
+      if (table.tableStatus() == TableStatus.ACTIVE && indexesActive) {
+        return;
+      }
+      if (System.nanoTime() > deadline) {
+        throw new IllegalStateException(tableName + " did not become active within "
+            + ACTIVE_TIMEOUT);
+      }
+      TimeUnit.MILLISECONDS.sleep(ACTIVE_POLL_INTERVAL.toMillis());
+    }
+  }
+
+  private static <T> Map<String, T> byName(List<T> indexes, Function<T, String> name) {
+    return indexes.stream().collect(Collectors.toMap(name, Function.identity()));
+  }
 }
@@ -0,0 +1,74 @@
+package com.github.learntocode2013.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of iterators that are each already sorted by the same comparator.
+ * Only the current head of every source is held in memory, so merging lazily paginated
+ * shard queries keeps at most one page per shard around, and a consumer that stops early
+ * never fetches the remaining pages.
+ */
+public class OrderedMergeIterator<T> implements Iterator<T> {
+  private final PriorityQueue<Head<T>> heads;
+  private final boolean[] exhausted;
+  private int lastSource = -1;
+
+  public OrderedMergeIterator(List<? extends Iterator<T>> sources, Comparator<? super T> order) {
+    Comparator<Head<T>> byItem = (a, b) -> order.compare(a.item(), b.item());
+    // Equal items keep the order of their sources, which makes the merge stable
+    this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+        byItem.thenComparingInt(Head::source));
+    this.exhausted = new boolean[sources.size()];
+    for (int i = 0; i < sources.size(); i++) {
+      Iterator<T> source = sources.get(i);
+      if (source.hasNext()) {
+        heads.add(new Head<>(source.next(), source, i));
+      } else {
+        exhausted[i] = true;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public T next() {
+    Head<T> head = heads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    Iterator<T> source = head.iterator();
+    if (source.hasNext()) {
+      heads.add(new Head<>(source.next(), source, head.source()));
+    } else {
+      exhausted[head.source()] = true;
+    }
+    lastSource = head.source();
+    return head.item();
+  }
+
+  /**
+   * @return the index of the source the last item returned by {@link #next()} came from,
+   *     or -1 before the first call
+   */
+  public int lastSource() {
+    return lastSource;
+  }
+
+  /**
+   * @return true once every item of the source has been returned by {@link #next()}
+   */
+  public boolean isExhausted(int source) {
+    return exhausted[source];
+  }
+
+  private record Head<T>(T item, Iterator<T> iterator, int source) {
+  }
+}
@@ -0,0 +1,133 @@
+package com.github.learntocode2013.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads many paginated partitions with a global limit on partitions in flight and hands their
+ * pages to a single consumer as they arrive. Pages travel through a bounded buffer, so readers
+ * wait for the consumer instead of materialising whole partitions; memory stays bounded by
+ * {@code bufferedPages} plus one page per partition in flight.
+ * Pages of one partition keep their order; pages of different partitions interleave.
+ */
+public class PartitionPageReader<T> implements Iterator<T>, AutoCloseable {
+  private static final Object PARTITION_DONE = new Object();
+  private final BlockingQueue<Object> pages;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Semaphore permits;
+  private final int partitionCount;
+  private int finishedPartitions;
+  private Iterator<T> current = Collections.emptyIterator();
+
+  /**
+   * @param partitions one task per partition, each returning a lazy iterator over its pages
+   * @param maxConcurrency the maximum number of partitions read at the same time
+   * @param bufferedPages the number of pages that may wait for the consumer
+   */
+  public PartitionPageReader(
+      List<? extends Callable<Iterator<List<T>>>> partitions,
+      int maxConcurrency,
+      int bufferedPages) {
+    this.pages = new ArrayBlockingQueue<>(Math.max(1, bufferedPages));
+    this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    this.partitionCount = partitions.size();
+    partitions.forEach(partition -> executor.submit(() -> read(partition)));
+    executor.shutdown();
+  }
+
+  /**
+   * Stream the items of all partitions. The stream must be closed when it is not consumed to
+   * the end, which stops the partition readers that are still running.
+   */
+  public static <T> Stream<T> stream(
+      List<? extends Callable<Iterator<List<T>>>> partitions,
+      int maxConcurrency,
+      int bufferedPages) {
+    PartitionPageReader<T> reader =
+        new PartitionPageReader<>(partitions, maxConcurrency, bufferedPages);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(reader, Spliterator.NONNULL), false)
+        .onClose(reader::close);
+  }
+
+  private void read(Callable<Iterator<List<T>>> partition) {
+    try {
+      permits.acquire();
+      try {
+        Iterator<List<T>> partitionPages = partition.call();
+        while (partitionPages.hasNext()) {
+          List<T> page = partitionPages.next();
+          if (!page.isEmpty()) {
+            pages.put(page);
+          }
+        }
+        pages.put(PARTITION_DONE);
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        pages.put(new Failure(e));
+      } finally {
+        permits.release();
+      }
+    } catch (InterruptedException e) {
+      // The reader was closed; nobody is waiting for this partition any more
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (finishedPartitions == partitionCount) {
+        return false;
+      }
+      Object next;
+      try {
+        next = pages.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new CompletionException(e);
+      }
+      if (next == PARTITION_DONE) {
+        finishedPartitions++;
+      } else if (next instanceof Failure failure) {
+        close();
+        throw new CompletionException(failure.error());
+      } else {
+        current = ((List<T>) next).iterator();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private record Failure(Exception error) {
+  }
+}
@@ -0,0 +1,145 @@
+package com.github.learntocode2013.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the per-shard queries of a fan-out read on a dedicated executor instead of the common
+ * ForkJoinPool. A fan-out is all-or-nothing: when one shard query fails, the deadline passes or
+ * the calling thread is interrupted, the outstanding shard queries are cancelled and the failure
+ * is rethrown as a {@link CompletionException}, the same way {@code CompletableFuture.join()}
+ * reports it.
+ */
+public class ShardFanOut implements AutoCloseable {
+  public enum Mode {
+    BOUNDED_POOL, VIRTUAL_THREADS
+  }
+
+  private final Mode mode;
+  private final ExecutorService executor;
+  // Caps in-flight queries when running on virtual threads; null for the bounded pool
+  private final Semaphore permits;
+  private final Duration deadline;
+
+  private ShardFanOut(Mode mode, ExecutorService executor, Semaphore permits, Duration deadline) {
+    this.mode = mode;
+    this.executor = executor;
+    this.permits = permits;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Fan out over a fixed pool of platform threads.
+   *
+   * @param threads the maximum number of shard queries in flight
+   * @param deadline how long a whole fan-out may take
+   */
+  public static ShardFanOut boundedPool(int threads, Duration deadline) {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "shard-fan-out-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    return new ShardFanOut(Mode.BOUNDED_POOL,
+        Executors.newFixedThreadPool(threads, threadFactory), null, deadline);
+  }
+
+  /**
+   * Fan out with one virtual thread per shard query.
+   *
+   * @param maxConcurrency the maximum number of shard queries in flight
+   * @param deadline how long a whole fan-out may take
+   */
+  public static ShardFanOut virtualThreads(int maxConcurrency, Duration deadline) {
+    return new ShardFanOut(Mode.VIRTUAL_THREADS,
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-fan-out-", 0).factory()),
+        new Semaphore(maxConcurrency), deadline);
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  public Duration deadline() {
+    return deadline;
+  }
+
+  /**
+   * Run all tasks and wait for them within this fan-out's deadline.
+   *
+   * @return the results in the order of the tasks
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+    return invokeAll(tasks, deadline);
+  }
+
+  /**
+   * Run all tasks and wait for them within the given deadline.
+   *
+   * @return the results in the order of the tasks
+   * @throws CompletionException wrapping the first failure, a {@link TimeoutException} or an
+   *     {@link InterruptedException}; outstanding tasks are cancelled in every case
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, Duration deadline) {
+    long deadlineNanos = System.nanoTime() + deadline.toNanos();
+    ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<T> task : tasks) {
+        futures.add(completionService.submit(permits == null ? task : withPermit(task)));
+      }
+      for (int done = 0; done < futures.size(); done++) {
+        long remaining = deadlineNanos - System.nanoTime();
+        Future<T> completed = completionService.poll(remaining, TimeUnit.NANOSECONDS);
+        if (completed == null) {
+          throw new CompletionException(new TimeoutException(String.format(
+              "Fan-out of %d shard queries did not finish within %s", tasks.size(), deadline)));
+        }
+        // Surfaces the first failure as soon as it happens rather than in task order
+        completed.get();
+      }
+      List<T> results = new ArrayList<>(futures.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (ExecutionException e) {
+      throw new CompletionException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private <T> Callable<T> withPermit(Callable<T> task) {
+    return () -> {
+      permits.acquire();
+      try {
+        return task.call();
+      } finally {
+        permits.release();
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
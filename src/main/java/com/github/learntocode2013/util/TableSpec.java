@@ -0,0 +1,90 @@
+package com.github.learntocode2013.util;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+import software.amazon.awssdk.enhanced.dynamodb.model.CreateTableEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.EnhancedGlobalSecondaryIndex;
+import software.amazon.awssdk.enhanced.dynamodb.model.EnhancedLocalSecondaryIndex;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+
+/**
+ * Declared billing, throughput and secondary indexes of a table. Used to create the table
+ * and to reconcile an existing one with {@link Operations#reconcileTable}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TableSpec {
+  @Builder.Default
+  BillingMode billingMode = BillingMode.PAY_PER_REQUEST;
+  // Only for provisioned tables
+  Long readCapacityUnits;
+  Long writeCapacityUnits;
+  @Singular
+  List<IndexSpec> globalIndexes;
+  @Singular
+  List<IndexSpec> localIndexes;
+
+  public boolean isProvisioned() {
+    return billingMode == BillingMode.PROVISIONED;
+  }
+
+  /**
+   * @return the table's throughput, or null for an on-demand table
+   */
+  public ProvisionedThroughput tableThroughput() {
+    return throughput("table", readCapacityUnits, writeCapacityUnits);
+  }
+
+  /**
+   * @return the index's throughput, or null for an on-demand table
+   */
+  public ProvisionedThroughput indexThroughput(IndexSpec index) {
+    return throughput(index.getIndexName(), index.getReadCapacityUnits(),
+        index.getWriteCapacityUnits());
+  }
+
+  private ProvisionedThroughput throughput(String name, Long read, Long write) {
+    if (!isProvisioned()) {
+      return null;
+    }
+    if (read == null || write == null) {
+      throw new IllegalArgumentException(name + " of a provisioned table needs read and write "
+          + "capacity");
+    }
+    return ProvisionedThroughput.builder()
+        .readCapacityUnits(read)
+        .writeCapacityUnits(write)
+        .build();
+  }
+
+  /**
+   * @return the request creating the table as declared; the enhanced client creates an
+   *     on-demand table when no throughput is given
+   */
+  public CreateTableEnhancedRequest createTableRequest() {
+    var request = CreateTableEnhancedRequest.builder()
+        .provisionedThroughput(tableThroughput());
+    // An empty index list is rejected by DynamoDB, so leave it out instead
+    if (!globalIndexes.isEmpty()) {
+      request.globalSecondaryIndices(globalIndexes.stream()
+          .map(index -> EnhancedGlobalSecondaryIndex.builder()
+              .indexName(index.getIndexName())
+              .projection(index.projection())
+              .provisionedThroughput(indexThroughput(index))
+              .build())
+          .toList());
+    }
+    if (!localIndexes.isEmpty()) {
+      request.localSecondaryIndices(localIndexes.stream()
+          .map(index -> EnhancedLocalSecondaryIndex.builder()
+              .indexName(index.getIndexName())
+              .projection(index.projection())
+              .build())
+          .toList());
+    }
+    return request.build();
+  }
+}
@@ -0,0 +1,205 @@
+package com.github.learntocode2013.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * An update expression declared once as a list of SET, ADD and DELETE clauses, each taking its
+ * value from an input object. Binding an input keeps only the clauses whose value is present,
+ * so an update never references a placeholder it does not bind.
+ *
+ * <p>The expression string and the name placeholders of every combination of present clauses
+ * are built the first time the combination is seen and shared from then on; a bind only fills
+ * the value map. A condition can be attached the same way, its placeholders declared up front.
+ *
+ * @param <I> the type holding the values of one update
+ */
+public final class UpdateExpressionTemplate<I> {
+  public enum Action {
+    SET, ADD, DELETE
+  }
+
+  private static final int MAX_CLAUSES = Long.SIZE;
+  private final List<Clause<I>> clauses;
+  private final Condition<I> condition;
+  // Bit i set: clause i is present
+  private final Map<Long, Compiled> compiled = new ConcurrentHashMap<>();
+
+  private UpdateExpressionTemplate(List<Clause<I>> clauses, Condition<I> condition) {
+    this.clauses = clauses;
+    this.condition = condition;
+  }
+
+  public static <I> Builder<I> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * Bind the values of one update.
+   *
+   * @throws IllegalArgumentException if no clause has a value, since DynamoDB rejects an empty
+   *     update expression
+   */
+  public Bound bind(I input) {
+    long present = 0;
+    AttributeValue[] values = new AttributeValue[clauses.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = clauses.get(i).value.apply(input);
+      if (values[i] != null) {
+        present |= 1L << i;
+      }
+    }
+    if (present == 0) {
+      throw new IllegalArgumentException("Nothing to update");
+    }
+    Compiled shape = compiled.computeIfAbsent(present, this::compile);
+    Map<String, AttributeValue> bound = new HashMap<>(2 * (Long.bitCount(present) + 1));
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        bound.put(clauses.get(i).valuePlaceholder, values[i]);
+      }
+    }
+    if (condition != null) {
+      condition.values.forEach((placeholder, value) -> bound.put(placeholder, value.apply(input)));
+    }
+    return new Bound(shape.updateExpression, condition == null ? null : condition.expression,
+        shape.names, Collections.unmodifiableMap(bound));
+  }
+
+  private Compiled compile(long present) {
+    Map<Action, StringJoiner> byAction = new LinkedHashMap<>();
+    Map<String, String> names = new HashMap<>();
+    for (int i = 0; i < clauses.size(); i++) {
+      if ((present & (1L << i)) == 0) {
+        continue;
+      }
+      Clause<I> clause = clauses.get(i);
+      String separator = clause.action == Action.SET ? " = " : " ";
+      byAction.computeIfAbsent(clause.action, action -> new StringJoiner(", ", action + " ", ""))
+          .add(clause.pathPlaceholder + separator + clause.valuePlaceholder);
+      names.putAll(clause.names);
+    }
+    if (condition != null) {
+      names.putAll(condition.names);
+    }
+    StringJoiner expression = new StringJoiner(" ");
+    byAction.values().forEach(joiner -> expression.add(joiner.toString()));
+    return new Compiled(expression.toString(), Map.copyOf(names));
+  }
+
+  /**
+   * One bound update: the shared expression strings and names with this update's values.
+   */
+  public record Bound(String updateExpression, String conditionExpression,
+                      Map<String, String> names, Map<String, AttributeValue> values) {
+
+    public UpdateItemRequest.Builder applyTo(UpdateItemRequest.Builder request) {
+      return request
+          .updateExpression(updateExpression)
+          .conditionExpression(conditionExpression)
+          .expressionAttributeNames(names)
+          .expressionAttributeValues(values);
+    }
+  }
+
+  /**
+   * @return the string set, or null to leave the clause out when the set is null or empty,
+   *     which DynamoDB does not accept as a value
+   */
+  public static AttributeValue stringSet(Collection<String> values) {
+    return values == null || values.isEmpty()
+        ? null
+        : AttributeValue.fromSs(List.copyOf(values));
+  }
+
+  /**
+   * @return the string, or null to leave the clause out
+   */
+  public static AttributeValue string(String value) {
+    return value == null ? null : AttributeValue.fromS(value);
+  }
+
+  public static final class Builder<I> {
+    private final List<Clause<I>> clauses = new ArrayList<>();
+    private final Map<String, String> namePlaceholders = new HashMap<>();
+    private Condition<I> condition;
+
+    private Builder() {
+    }
+
+    /**
+     * @param path the attribute, or a dot-separated path into nested maps
+     * @param value the value of an input, or null to leave the clause out
+     */
+    public Builder<I> set(String path, Function<I, AttributeValue> value) {
+      return clause(Action.SET, path, value);
+    }
+
+    public Builder<I> add(String path, Function<I, AttributeValue> value) {
+      return clause(Action.ADD, path, value);
+    }
+
+    public Builder<I> delete(String path, Function<I, AttributeValue> value) {
+      return clause(Action.DELETE, path, value);
+    }
+
+    /**
+     * Attach a condition to every update. Attribute names are referenced as {@code #name}
+     * placeholders of the listed attributes, values by the placeholders of {@code values}.
+     *
+     * @param expression e.g. {@code "#version = :expected"}
+     * @param attributes the attributes referenced, each as {@code #<attribute>}
+     * @param values the condition's value placeholders and how to get each from an input
+     */
+    public Builder<I> condition(String expression, Set<String> attributes,
+        Map<String, Function<I, AttributeValue>> values) {
+      Map<String, String> names = new HashMap<>();
+      attributes.forEach(attribute -> names.put("#" + attribute, attribute));
+      this.condition = new Condition<>(expression, Map.copyOf(names), Map.copyOf(values));
+      return this;
+    }
+
+    private Builder<I> clause(Action action, String path, Function<I, AttributeValue> value) {
+      if (clauses.size() == MAX_CLAUSES) {
+        throw new IllegalStateException("A template has at most " + MAX_CLAUSES + " clauses");
+      }
+      StringJoiner pathPlaceholder = new StringJoiner(".");
+      Map<String, String> names = new HashMap<>();
+      for (String segment : path.split("\\.")) {
+        String placeholder = namePlaceholders.computeIfAbsent(segment,
+            name -> "#n" + namePlaceholders.size());
+        pathPlaceholder.add(placeholder);
+        names.put(placeholder, segment);
+      }
+      clauses.add(new Clause<>(action, pathPlaceholder.toString(), ":v" + clauses.size(),
+          Map.copyOf(names), value));
+      return this;
+    }
+
+    public UpdateExpressionTemplate<I> build() {
+      return new UpdateExpressionTemplate<>(List.copyOf(clauses), condition);
+    }
+  }
+
+  private record Clause<I>(Action action, String pathPlaceholder, String valuePlaceholder,
+                           Map<String, String> names, Function<I, AttributeValue> value) {
+  }
+
+  private record Condition<I>(String expression, Map<String, String> names,
+                              Map<String, Function<I, AttributeValue>> values) {
+  }
+
+  private record Compiled(String updateExpression, Map<String, String> names) {
+  }
+}
@@ -5,10 +5,18 @@ import com.github.learntocode2013.model.BillingAdmin;
 import com.github.learntocode2013.model.SaasAppInfo;
 import com.github.learntocode2013.model.SaasAppInfo.SubscriptionType;
 import com.github.learntocode2013.model.SingleTableDesign.EntityType;
+import com.github.learntocode2013.service.OnboardingResult.Outcome;
 import com.github.learntocode2013.util.DynamoDBClientFactory;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.MethodOrderer;
@@ -19,22 +27,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 class BillingServiceTest {
   private static final Logger log = LoggerFactory.getLogger(BillingServiceTest.class);
   private static final String ORG_ENTITY_PK_PREFIX = "Billing#";
   private static final String ADMIN_ENTITY_PK_PREFIX = "Admin#";
+  // Onboarded tenants are new on every run against a DynamoDB Local that keeps its data
+  private static final String RUN = UUID.randomUUID().toString().substring(0, 8);
+  private static final String NETFLIX = "Netflix-" + RUN;
+  private static final String APPLE = "Apple-" + RUN;
   private static DynamoDbClient dynamoDbClient;
   private static BillingService subject;
+  private static BillingRepository billingRepository;
 
   @BeforeAll
   static void setUp() {
     dynamoDbClient = DynamoDBClientFactory.createLocalClient();
     DynamoDbEnhancedClient dynamoDbEnhancedClient = DynamoDBClientFactory.createEnhancedLocalClient();
-    BillingRepository billingRepository = new BillingRepository(dynamoDbEnhancedClient);
+    billingRepository = new BillingRepository(dynamoDbEnhancedClient);
     subject = new BillingService(billingRepository);
     billingRepository.createTableIfNotExists();
+    billingRepository.reconcileTable(dynamoDbClient);
     billingRepository.enableTtl(dynamoDbClient)
         .onFailure(th -> log.error("Failed to enable TTL on table {}",
             BillingRepository.TABLE_NAME,
@@ -48,13 +63,23 @@ class BillingServiceTest {
     var failedResponse = subject.deleteSubscriptionViaOrgAdmin(
         String.format("%s%s",ORG_ENTITY_PK_PREFIX, "Amazon"),
         String.format("%s%s", ADMIN_ENTITY_PK_PREFIX, "Amazon"),
+        "Amazon",
         "Dibakar Sen"
     );
     Assertions.assertTrue(failedResponse.isFailure());
 
+    var otherTenant = subject.deleteSubscriptionViaOrgAdmin(
+        String.format("%s%s",ORG_ENTITY_PK_PREFIX, "Google"),
+        String.format("%s%s", ADMIN_ENTITY_PK_PREFIX, "Amazon"),
+        "Amazon",
+        "Andy Jassy"
+    );
+    Assertions.assertTrue(otherTenant.isFailure());
+
     var response = subject.deleteSubscriptionViaOrgAdmin(
         String.format("%s%s",ORG_ENTITY_PK_PREFIX, "Amazon"),
         String.format("%s%s", ADMIN_ENTITY_PK_PREFIX, "Amazon"),
+        "Amazon",
         "Andy Jassy"
     );
     Assertions.assertTrue(response.isSuccess());
@@ -92,6 +117,152 @@ class BillingServiceTest {
     });
   }
 
+  @Test
+  @Order(4)
+  void bulkOnboardingReportsEachTenant() {
+    var secondsToExpiry = Instant.now().plusSeconds(3600).getEpochSecond();
+    var onboardings = Stream.of(NETFLIX, APPLE, "Google")
+        .map(org -> new TenantOnboarding(
+            SaasAppInfo.builder()
+                .pk(ORG_ENTITY_PK_PREFIX + org)
+                .organization(org)
+                .subscriptionType(SubscriptionType.PRO)
+                .ttl(secondsToExpiry)
+                .type(EntityType.TENANT)
+                .build(),
+            BillingAdmin.builder()
+                .pk(ADMIN_ENTITY_PK_PREFIX + org)
+                .organization(org)
+                .admins(Set.of("Admin of " + org))
+                .phoneNumbers(Map.of())
+                .ttl(secondsToExpiry)
+                .type(EntityType.TENANT_ADMIN)
+                .build()))
+        .collect(Collectors.toCollection(ArrayList::new));
+    onboardings.add(new TenantOnboarding(onboardings.getFirst().getTenant(),
+        onboardings.get(1).getAdmin()));
+
+    var response = subject.onboardTenants(onboardings, 2);
+    Assertions.assertTrue(response.isSuccess());
+    var outcomes = response.get().stream().map(OnboardingResult::getOutcome).toList();
+    Assertions.assertEquals(List.of(Outcome.ONBOARDED, Outcome.ONBOARDED,
+        Outcome.ALREADY_EXISTS, Outcome.FAILED), outcomes);
+    Assertions.assertEquals(Set.of("Admin of " + APPLE),
+        subject.getOrgAdmins(ADMIN_ENTITY_PK_PREFIX + APPLE).get().getAdmins());
+
+    // The same batch again writes nothing new
+    var retry = subject.onboardTenants(onboardings.subList(0, 2), 2);
+    Assertions.assertTrue(retry.isSuccess());
+    retry.get().forEach(result -> Assertions.assertNotEquals(Outcome.FAILED, result.getOutcome()));
+  }
+
+  @Test
+  @Order(5)
+  void tenantItemCollectionIsReadWithOneQuery() {
+    var collection = subject.getTenantItemCollection(APPLE, null, dynamoDbClient);
+    Assertions.assertTrue(collection.isSuccess());
+    Assertions.assertEquals(2, collection.get().getItems().size());
+    Assertions.assertEquals(ORG_ENTITY_PK_PREFIX + APPLE,
+        collection.get().tenant().orElseThrow().getPk());
+    Assertions.assertEquals(Set.of("Admin of " + APPLE),
+        collection.get().admins().getFirst().getAdmins());
+
+    var admins = subject.getTenantItemCollection(
+        "Google", EntityType.TENANT_ADMIN, dynamoDbClient);
+    Assertions.assertTrue(admins.isSuccess());
+    Assertions.assertTrue(admins.get().tenant().isEmpty());
+    Assertions.assertEquals(1, admins.get().admins().size());
+  }
+
+  @Test
+  @Order(6)
+  void concurrentAdminUpdatesAreNotLost() throws Exception {
+    var adminPk = ADMIN_ENTITY_PK_PREFIX + "Meta";
+    var before = subject.getOrgAdmins(adminPk).get();
+    long versionBefore = before.getVersion() == null ? 0 : before.getVersion();
+    var newAdmins = List.of("Sheryl Sandberg", "Susan Li", "Javier Olivan", "Chris Cox");
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var updates = newAdmins.stream()
+          .map(name -> executor.submit(() -> subject.updateTenantAdmin(adminPk, admin ->
+              admin.toBuilder()
+                  .admins(Stream.concat(admin.getAdmins().stream(), Stream.of(name))
+                      .collect(Collectors.toSet()))
+                  .build())))
+          .toList();
+      for (var update : updates) {
+        Assertions.assertTrue(update.get().isSuccess());
+      }
+    }
+
+    var after = subject.getOrgAdmins(adminPk).get();
+    Assertions.assertTrue(after.getAdmins().containsAll(newAdmins));
+    Assertions.assertEquals(versionBefore + newAdmins.size(), after.getVersion());
+
+    var renamed = subject.updateTenantAdmin(adminPk,
+        admin -> admin.toBuilder().pk(ADMIN_ENTITY_PK_PREFIX + APPLE).build());
+    Assertions.assertTrue(renamed.isFailure());
+  }
+
+  @Test
+  @Order(7)
+  void backfilledItemsJoinTheirTenantItemCollection() {
+    var org = "Legacy-" + UUID.randomUUID();
+    // As written before item collections: no collection sort key
+    dynamoDbClient.putItem(r -> r
+        .tableName(BillingRepository.TABLE_NAME)
+        .item(Map.of(
+            "pk", AttributeValue.fromS(ORG_ENTITY_PK_PREFIX + org),
+            "organization", AttributeValue.fromS(org),
+            "type", AttributeValue.fromS(EntityType.TENANT.name()))));
+    Assertions.assertTrue(
+        subject.getTenantItemCollection(org, null, dynamoDbClient).get().getItems().isEmpty());
+
+    var backfilled = subject.backfillCollectionSortKeys(dynamoDbClient);
+    Assertions.assertTrue(backfilled.isSuccess());
+    Assertions.assertTrue(backfilled.get() >= 1);
+    var collection = subject.getTenantItemCollection(org, null, dynamoDbClient).get();
+    Assertions.assertEquals(ORG_ENTITY_PK_PREFIX + org,
+        collection.tenant().orElseThrow().getPk());
+    Assertions.assertEquals(0, subject.backfillCollectionSortKeys(dynamoDbClient).get());
+  }
+
+  @Test
+  @Order(8)
+  void onboardingsPastTheDeadlineKeepTheirOwnOutcome() {
+    var secondsToExpiry = Instant.now().plusSeconds(3600).getEpochSecond();
+    var onboardings = Stream.of("Spotify-" + RUN, "Zoom-" + RUN, "Slack-" + RUN)
+        .map(org -> new TenantOnboarding(
+            SaasAppInfo.builder()
+                .pk(ORG_ENTITY_PK_PREFIX + org)
+                .organization(org)
+                .subscriptionType(SubscriptionType.FREE)
+                .ttl(secondsToExpiry)
+                .type(EntityType.TENANT)
+                .build(),
+            BillingAdmin.builder()
+                .pk(ADMIN_ENTITY_PK_PREFIX + org)
+                .organization(org)
+                .admins(Set.of("Admin of " + org))
+                .phoneNumbers(Map.of())
+                .ttl(secondsToExpiry)
+                .type(EntityType.TENANT_ADMIN)
+                .build()))
+        .toList();
+
+    // Nothing can finish within no time at all, yet the batch still reports every tenant
+    var response = subject.onboardTenants(onboardings, 1, Duration.ZERO);
+    Assertions.assertTrue(response.isSuccess());
+    Assertions.assertEquals(onboardings.size(), response.get().size());
+    response.get().forEach(result ->
+        Assertions.assertNotEquals(Outcome.FAILED, result.getOutcome()));
+
+    var retry = subject.onboardTenants(onboardings, 1);
+    Assertions.assertTrue(retry.isSuccess());
+    retry.get().forEach(result -> Assertions.assertTrue(
+        Set.of(Outcome.ONBOARDED, Outcome.ALREADY_EXISTS).contains(result.getOutcome())));
+  }
+
   static void loadData() {
     generateTenantData().forEach((pk, item) -> subject.createTenant(item));
     generateAdminData().forEach((pk, item) -> subject.createTenantAdmin(item));
@@ -1,7 +1,9 @@
 package com.github.learntocode2013.service;
 
 import com.github.learntocode2013.model.CustomerProfile;
+import com.github.learntocode2013.stream.StreamConsumerConfig;
 import com.github.learntocode2013.util.DynamoDBClientFactory;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -10,6 +12,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.MethodOrderer;
@@ -111,6 +115,35 @@ class CustomerProfileServiceTest {
     });
   }
 
+  @Test
+  @Order(5)
+  void countProfilesWithoutFetchingThem() {
+    var dynamoDbClient = DynamoDBClientFactory.createLocalClient();
+    long active = subject.getAllProfilesWithStatus(CustomerProfile.Status.ACTIVE).get().size();
+    var viaIndex = subject.countProfilesWithStatus(dynamoDbClient, CustomerProfile.Status.ACTIVE);
+    Assertions.assertTrue(viaIndex.isSuccess());
+    Assertions.assertEquals(active, viaIndex.get());
+
+    var viaScan = subject.countProfiles(dynamoDbClient, CustomerProfile.Status.ACTIVE, 4);
+    Assertions.assertTrue(viaScan.isSuccess());
+    Assertions.assertEquals(active, viaScan.get().getCount());
+    Assertions.assertTrue(viaScan.get().getScannedCount() >= active);
+  }
+
+  @Test
+  @Order(5)
+  void fetchAllActiveProfiles_Across_Status_Shards() {
+    var backfill = subject.backfillStatusShards();
+    Assertions.assertTrue(backfill.isSuccess());
+    var response = subject.getAllProfilesWithStatusAcrossShards(CustomerProfile.Status.ACTIVE);
+    Assertions.assertTrue(response.isSuccess());
+    Assertions.assertFalse(response.get().isEmpty());
+    response.get().forEach(item -> {
+      Assertions.assertEquals(CustomerProfile.Status.ACTIVE, item.getStatus());
+      Assertions.assertTrue(item.getStatusShard().startsWith("ACTIVE#"));
+    });
+  }
+
   @Test
   @Order(5)
   void fetchAllProfiles_In_Batch() {
@@ -141,6 +174,53 @@ class CustomerProfileServiceTest {
     logger.info("No items were retrieved");
   }
 
+  @Test
+  @Order(5)
+  void statusViewFollowsTheTable() throws Exception {
+    var consumerConfig = StreamConsumerConfig.builder()
+        .pollInterval(Duration.ofMillis(50))
+        .shardDiscoveryInterval(Duration.ofMillis(200))
+        .build();
+    try (var view = new CustomerStatusView(DynamoDBClientFactory.createEnhancedLocalClient(),
+        DynamoDBClientFactory.createLocalClient(), DynamoDBClientFactory.createLocalStreamsClient(),
+        consumerConfig)) {
+      Assertions.assertTrue(view.start(4).isSuccess());
+      long active = subject.getAllProfilesWithStatus(CustomerProfile.Status.ACTIVE).get().size();
+      Assertions.assertEquals(active, view.count(CustomerProfile.Status.ACTIVE));
+
+      var id = "USER#" + UUID.randomUUID();
+      var profile = CustomerProfile.builder()
+          .id(id)
+          .firstName("View")
+          .lastName("Probe")
+          .email("view-probe@gmail.com")
+          .regDate(Instant.now())
+          .status(CustomerProfile.Status.INACTIVE)
+          .build();
+      Assertions.assertTrue(subject.createItem(profile).isSuccess());
+      awaitTrue(() -> view.hasStatus(id, CustomerProfile.Status.INACTIVE));
+
+      subject.updateItem(profile.toBuilder().status(CustomerProfile.Status.ACTIVE).build());
+      awaitTrue(() -> view.hasStatus(id, CustomerProfile.Status.ACTIVE));
+      Assertions.assertEquals(active + 1, view.count(CustomerProfile.Status.ACTIVE));
+      Assertions.assertTrue(view.customersWithStatus(CustomerProfile.Status.ACTIVE).contains(id));
+
+      subject.deleteItem(id);
+      awaitTrue(() -> view.statusOf(id).isEmpty());
+      Assertions.assertEquals(active, view.count(CustomerProfile.Status.ACTIVE));
+      Assertions.assertTrue(view.lastChangeAt().isPresent());
+      Assertions.assertFalse(view.replicationLag().isNegative());
+    }
+  }
+
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(System.nanoTime() < deadline, "Timed out waiting for the view");
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
   @Test
   @Order(6)
   void softDeleteAllProfiles() {
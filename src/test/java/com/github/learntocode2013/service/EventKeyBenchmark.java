@@ -0,0 +1,81 @@
+package com.github.learntocode2013.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the keys of one sharded event with String.format against EventKeyCodec.
+ * Not a unit test; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.github.learntocode2013.service.EventKeyBenchmark}
+ * or from the IDE. The GC profiler reports the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventKeyBenchmark {
+    private static final int SHARD_COUNT = 8;
+    private final EventKeyCodec codec = new EventKeyCodec();
+    private final String eventId = "9f0c2d4e-6a1b-4c3d-8e5f-7a9b0c1d2e3f";
+    private int sequence;
+
+    /**
+     * The keys as EventService built them before the codec.
+     */
+    @Benchmark
+    public void formattedKeys(Blackhole blackhole) {
+        long now = System.currentTimeMillis();
+        int shardId = sequence++ % SHARD_COUNT;
+        String dateString = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        blackhole.consume(String.format("EVENTS#%s#SHARD%d", dateString, shardId));
+        blackhole.consume(String.format("%d#%s", now, eventId));
+        blackhole.consume(String.format("%s#%s#SHARD%d", "CLICK", dateString, shardId));
+    }
+
+    @Benchmark
+    public void codecKeys(Blackhole blackhole) {
+        long now = System.currentTimeMillis();
+        int shardId = sequence++ % SHARD_COUNT;
+        LocalDate day = codec.dayOf(now);
+        blackhole.consume(codec.partitionKey(day, shardId));
+        blackhole.consume(codec.sortKey(now, eventId));
+        blackhole.consume(codec.typeShardKey("CLICK", day, shardId));
+    }
+
+    @Benchmark
+    public void codecKeysWithGeneratedId(Blackhole blackhole) {
+        long now = System.currentTimeMillis();
+        int shardId = sequence++ % SHARD_COUNT;
+        LocalDate day = codec.dayOf(now);
+        blackhole.consume(codec.partitionKey(day, shardId));
+        blackhole.consume(codec.sortKey(now, codec.newEventId(now)));
+        blackhole.consume(codec.typeShardKey("CLICK", day, shardId));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EventKeyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
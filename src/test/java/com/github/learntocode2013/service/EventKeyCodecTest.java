@@ -0,0 +1,89 @@
+package com.github.learntocode2013.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for EventKeyCodec; keys must match the formatted keys already stored in the table.
+ */
+class EventKeyCodecTest {
+
+    private final EventKeyCodec codec = new EventKeyCodec(ZoneId.of("Europe/Berlin"));
+
+    /**
+     * Test that the cached keys equal the String.format keys for a spread of days and shards.
+     */
+    @Test
+    void testKeysMatchFormattedKeys() {
+        for (LocalDate day = LocalDate.of(1999, 12, 30); day.isBefore(LocalDate.of(2000, 3, 2));
+             day = day.plusDays(1)) {
+            String dateString = day.format(DateTimeFormatter.ISO_DATE);
+            // Out of order to exercise growing the cached arrays
+            for (int shardId : new int[] {3, 0, 17, 1, 64}) {
+                assertEquals(String.format("EVENTS#%s#SHARD%d", dateString, shardId),
+                        codec.partitionKey(day, shardId));
+                assertEquals(String.format("%s#%s#SHARD%d", "CLICK", dateString, shardId),
+                        codec.typeShardKey("CLICK", day, shardId));
+            }
+        }
+        assertEquals(String.format("%d#%s", 1760000000000L, "event-1"),
+                codec.sortKey(1760000000000L, "event-1"));
+        assertEquals(LocalDate.of(12345, 1, 2).format(DateTimeFormatter.ISO_DATE),
+                EventKeyCodec.isoDate(LocalDate.of(12345, 1, 2)));
+    }
+
+    /**
+     * Test that the cached day bounds follow the codec's time zone, including a DST switch.
+     */
+    @Test
+    void testDayOfAcrossMidnight() {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        ZonedDateTime midnight = LocalDate.of(2025, 3, 30).atStartOfDay(berlin);
+        long start = midnight.toInstant().toEpochMilli();
+
+        assertEquals(LocalDate.of(2025, 3, 29), codec.dayOf(start - 1));
+        assertEquals(LocalDate.of(2025, 3, 30), codec.dayOf(start));
+        // The DST day is 23 hours long
+        long nextMidnight = midnight.plusDays(1).toInstant().toEpochMilli();
+        assertEquals(23 * 3600_000L, nextMidnight - start);
+        assertEquals(LocalDate.of(2025, 3, 30), codec.dayOf(nextMidnight - 1));
+        assertEquals(LocalDate.of(2025, 3, 31), codec.dayOf(nextMidnight));
+        assertEquals(LocalDate.of(2025, 3, 29), codec.dayOf(start - 1));
+    }
+
+    /**
+     * Test that generated ids are ULIDs that sort by time and in generation order.
+     */
+    @Test
+    void testGeneratedIdsAreSortable() {
+        List<String> ids = new ArrayList<>();
+        long millis = 1760000000000L;
+        for (int i = 0; i < 1000; i++) {
+            // Ten ids per millisecond, and one step back in time that must not break the order
+            long timestamp = i == 500 ? millis - 5 : millis + i / 10;
+            ids.add(codec.newEventId(timestamp));
+        }
+        for (int i = 1; i < ids.size(); i++) {
+            assertEquals(26, ids.get(i).length());
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0,
+                    ids.get(i - 1) + " should sort before " + ids.get(i));
+        }
+        // The first ten characters are the Crockford base32 encoding of the millis
+        long decoded = 0;
+        for (char c : ids.get(0).substring(0, 10).toCharArray()) {
+            decoded = decoded * 32 + "0123456789ABCDEFGHJKMNPQRSTVWXYZ".indexOf(c);
+        }
+        assertEquals(millis, decoded);
+        assertNotEquals(codec.newEventId(millis + 10_000), codec.newEventId(millis + 10_000));
+    }
+}
@@ -3,21 +3,37 @@ package com.github.learntocode2013.service;
 import com.github.learntocode2013.dynamodb.DynamoDBLocalTestUtil;
 import com.github.learntocode2013.dynamodb.DynamoDBTableTestUtil;
 import com.github.learntocode2013.model.EventEntity;
+import com.github.learntocode2013.util.CursorPage;
+import com.github.learntocode2013.util.DynamoDBClientFactory;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -63,10 +79,15 @@ class EventServiceTest {
     }
 
     /**
-     * Set up each test with a fresh service instance.
+     * Set up each test with a fresh service instance and an empty table,
+     * since every test writes into today's partitions.
      */
     @BeforeEach
     void setUp() {
+        eventTable = DynamoDBTableTestUtil.createTable(
+                dynamoDbClient,
+                EventEntity.class,
+                EventService.TABLE_NAME);
         eventService = new EventService(dynamoDbClient, SHARD_COUNT);
     }
 
@@ -112,6 +133,48 @@ class EventServiceTest {
         typeBEvents.forEach(event -> assertEquals("TYPE_B", event.getEventType()));
     }
 
+    /**
+     * Test that the filter-expression fallback returns the same events as the type index.
+     */
+    @Test
+    void testGetEventsByTypeWithFilterFallback() {
+        eventService.recordShardedEvent("TYPE_A", UUID.randomUUID().toString(), "Data A1");
+        eventService.recordShardedEvent("TYPE_B", UUID.randomUUID().toString(), "Data B1");
+        eventService.recordShardedEvent("TYPE_A", UUID.randomUUID().toString(), "Data A2");
+
+        List<EventEntity> viaIndex = eventService.getEventsByDateAndType(
+                TODAY, "TYPE_A", EventService.TypeLookup.INDEX);
+        List<EventEntity> viaFilter = eventService.getEventsByDateAndType(
+                TODAY, "TYPE_A", EventService.TypeLookup.FILTER);
+
+        assertEquals(2, viaIndex.size());
+        assertEquals(viaIndex.stream().map(EventEntity::getSk).toList(),
+                viaFilter.stream().map(EventEntity::getSk).toList());
+        viaIndex.forEach(event -> assertTrue(event.getTypeShard().startsWith("TYPE_A#")));
+    }
+
+    /**
+     * Test that events written before the type index existed are found by default and by the
+     * index once backfilled.
+     */
+    @Test
+    void testBackfillTypeShardsMakesOldEventsIndexed() {
+        EventEntity old = eventService.newShardedEvent("TYPE_A", UUID.randomUUID().toString(),
+                "Data A0", "key", TODAY, System.currentTimeMillis());
+        old.setTypeShard(null);
+        eventTable.putItem(old);
+        eventService.recordShardedEvent("TYPE_A", UUID.randomUUID().toString(), "Data A1");
+
+        assertEquals(2, eventService.getEventsByDateAndType(TODAY, "TYPE_A").size());
+        assertEquals(1, eventService.getEventsByDateAndType(
+                TODAY, "TYPE_A", EventService.TypeLookup.INDEX).size());
+
+        assertEquals(1, eventService.backfillTypeShards(TODAY));
+        assertEquals(2, eventService.getEventsByDateAndType(
+                TODAY, "TYPE_A", EventService.TypeLookup.INDEX).size());
+        assertEquals(0, eventService.backfillTypeShards(TODAY));
+    }
+
     /**
      * Test that events are distributed across shards.
      * This test demonstrates how sharding helps prevent hot partitions.
@@ -165,4 +228,283 @@ class EventServiceTest {
         // But due to random distribution, we can't guarantee exactly SHARD_COUNT
         System.out.println("Events distributed across " + distinctPartitionKeys + " shards");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that hashed shard selection keeps point lookups and per-key history on one shard.
+     */
+    @Test
+    void testHashedShardLookups() {
+        EventService hashedService =
+                new EventService(dynamoDbClient, SHARD_COUNT, ShardStrategy.HASHED);
+
+        String eventId = UUID.randomUUID().toString();
+        hashedService.recordShardedEvent("LOGIN", eventId, "Login data");
+        hashedService.recordShardedEvent("CLICK", UUID.randomUUID().toString(), "Click 1", "user-42");
+        hashedService.recordShardedEvent("CLICK", UUID.randomUUID().toString(), "Click 2", "user-42");
+
+        Optional<EventEntity> event = hashedService.getEvent(TODAY, eventId);
+        assertTrue(event.isPresent());
+        assertEquals(eventId, event.get().getEventId());
+        assertTrue(event.get().getPk().endsWith(
+                "#SHARD" + ShardStrategy.HASHED.shardFor(eventId, SHARD_COUNT)));
+
+        List<EventEntity> history = hashedService.getEventsForKey(TODAY, "user-42");
+        assertEquals(2, history.size());
+        assertEquals(1, history.stream().map(EventEntity::getPk).distinct().count());
+
+        assertTrue(hashedService.getEvent(TODAY, "missing-event").isEmpty());
+    }
+
+    /**
+     * Test that adaptive mode raises the day's shard count once the write rate exceeds
+     * what the current shards should absorb, and that reads follow the recorded count.
+     */
+    @Test
+    void testAdaptiveShardCount() throws Exception {
+        AdaptiveShardingConfig config = AdaptiveShardingConfig.builder()
+                .minShards(1)
+                .maxShards(4)
+                .writesPerShardPerSecond(1)
+                .build();
+        EventService adaptiveService =
+                new EventService(dynamoDbClient, ShardStrategy.HASHED, config);
+        assertEquals(1, adaptiveService.getShardCount(TODAY));
+        // Caches the count of one shard for the next 30 seconds
+        EventService staleReader = new EventService(dynamoDbClient, ShardStrategy.HASHED, config);
+        assertEquals(1, staleReader.getShardCount(TODAY));
+
+        for (int i = 0; i < 5; i++) {
+            adaptiveService.recordShardedEvent("ADAPTIVE", "adaptive-" + i, "Data " + i);
+        }
+        // Close the one second measuring window; the next write evaluates the rate
+        TimeUnit.MILLISECONDS.sleep(1100);
+        adaptiveService.recordShardedEvent("ADAPTIVE", "adaptive-5", "Data 5");
+        assertEquals(2, adaptiveService.getShardCount(TODAY));
+
+        // A fresh instance learns the count from the metadata item
+        EventService reader = new EventService(dynamoDbClient, ShardStrategy.HASHED, config);
+        assertEquals(2, reader.getShardCount(TODAY));
+        assertEquals(6, reader.getEventsByDate(TODAY).size());
+        for (int i = 0; i < 6; i++) {
+            assertTrue(reader.getEvent(TODAY, "adaptive-" + i).isPresent());
+        }
+        // Reads re-read the count, so the shard added meanwhile is not skipped
+        assertEquals(6, staleReader.getEventsByDate(TODAY).size());
+    }
+
+    /**
+     * Test that shard results are merged in global time order and that a first-N read
+     * returns the oldest events.
+     */
+    @Test
+    void testEventsInTimeOrder() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            eventService.recordShardedEvent("ORDERED", "ordered-" + i, "Data " + i);
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+
+        List<EventEntity> timeline = eventService.streamEventsByDateInTimeOrder(TODAY)
+                .collect(Collectors.toList());
+        assertEquals(20, timeline.size());
+        for (int i = 0; i < timeline.size(); i++) {
+            assertEquals("ordered-" + i, timeline.get(i).getEventId());
+        }
+
+        List<EventEntity> firstFive = eventService.getFirstEventsByDate(TODAY, 5);
+        assertEquals(timeline.subList(0, 5).stream().map(EventEntity::getSk).toList(),
+                firstFive.stream().map(EventEntity::getSk).toList());
+    }
+
+    /**
+     * Test sub-day time windows and the latest-N query across shards.
+     */
+    @Test
+    void testTimeWindowAndLatestEvents() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            eventService.recordShardedEvent("WINDOW", "before-" + i, "Data " + i);
+        }
+        TimeUnit.MILLISECONDS.sleep(5);
+        Instant windowStart = Instant.now();
+        for (int i = 0; i < 5; i++) {
+            eventService.recordShardedEvent("WINDOW", "inside-" + i, "Data " + i);
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+        Instant windowEnd = Instant.now();
+        TimeUnit.MILLISECONDS.sleep(5);
+        eventService.recordShardedEvent("WINDOW", "after-0", "Data");
+
+        List<EventEntity> window = eventService.getEventsBetween(windowStart, windowEnd);
+        assertEquals(List.of("inside-0", "inside-1", "inside-2", "inside-3", "inside-4"),
+                window.stream().map(EventEntity::getEventId).toList());
+
+        List<EventEntity> latest = eventService.getLatestEvents(TODAY, 3);
+        assertEquals(List.of("after-0", "inside-4", "inside-3"),
+                latest.stream().map(EventEntity::getEventId).toList());
+    }
+
+    /**
+     * Test the multi-day range stream in both partition and time order.
+     */
+    @Test
+    void testEventsBetweenDates() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            eventService.recordShardedEvent("RANGE", "range-" + i, "Data " + i);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        LocalDate from = TODAY.minusDays(6);
+
+        try (Stream<EventEntity> events = eventService.streamEventsBetweenDates(
+                from, TODAY, EventService.RangeOrder.PARTITION, 2)) {
+            assertEquals(30, events.count());
+        }
+
+        try (Stream<EventEntity> events = eventService.streamEventsBetweenDates(
+                from, TODAY, EventService.RangeOrder.TIME)) {
+            List<String> sortKeys = events.map(EventEntity::getSk).toList();
+            assertEquals(30, sortKeys.size());
+            assertEquals(sortKeys.stream().sorted().toList(), sortKeys);
+        }
+
+        // Stopping early must not leave partition readers behind
+        try (Stream<EventEntity> events = eventService.streamEventsBetweenDates(
+                from, TODAY, EventService.RangeOrder.PARTITION, 1)) {
+            assertEquals(5, events.limit(5).count());
+        }
+    }
+
+    /**
+     * Test that events submitted through the ingestion buffer are batch-written by the drainer.
+     */
+    @Test
+    void testFireAndForgetIngestion() throws Exception {
+        int eventCount = 200;
+        EventIngestionConfig config = EventIngestionConfig.builder()
+                .ringCapacity(64)
+                .drainerThreads(2)
+                .build();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try (EventIngestor ingestor = new EventIngestor(eventService, config)) {
+            CountDownLatch latch = new CountDownLatch(eventCount);
+            for (int i = 0; i < eventCount; i++) {
+                final int index = i;
+                producers.submit(() -> {
+                    try {
+                        assertTrue(ingestor.submit("INGESTED", "ingested-" + index, "Data " + index));
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+            producers.shutdown();
+            ingestor.close();
+
+            IngestionMetrics metrics = ingestor.metrics();
+            assertEquals(eventCount, metrics.getSubmitted());
+            assertEquals(eventCount, metrics.getWritten());
+            assertEquals(0, metrics.getQueueDepth());
+            assertTrue(metrics.getMaxLatency().compareTo(metrics.getAverageLatency()) >= 0);
+        }
+
+        assertEquals(eventCount, eventService.getEventsByDate(TODAY).size());
+    }
+
+    /**
+     * Test that spooled events survive a restart of the spool, that a torn record is skipped
+     * and that replay writes everything to the table.
+     */
+    @Test
+    void testSpoolReplaysAfterRestart(@TempDir Path spoolDir) throws Exception {
+        int eventCount = 100;
+        Duration replayInterval = Duration.ofHours(1);
+        try (EventSpool spool = new EventSpool(spoolDir, eventService, 4096, replayInterval)) {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < eventCount; i++) {
+                spool.spill(eventService.newShardedEvent("SPOOLED", "spooled-" + i,
+                        "Data " + i, "spooled-" + i, TODAY, now + i));
+            }
+            assertEquals(eventCount, spool.spooledCount());
+            assertTrue(spool.segmentCount() > 1, "Small segments should have rotated");
+        }
+        // A record torn by a crash: length written, payload and checksum missing
+        try (FileChannel torn = FileChannel.open(spoolDir.resolve("events-00000000000000001000.spool"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            torn.write(ByteBuffer.allocate(16).putInt(0, 64));
+        }
+
+        try (EventSpool spool = new EventSpool(spoolDir, eventService, 4096, replayInterval)) {
+            spool.replayNow();
+            assertEquals(1, spool.segmentCount());
+        }
+        List<EventEntity> events = eventService.getEventsByDate(TODAY);
+        assertEquals(eventCount, events.size());
+        assertTrue(events.stream().allMatch(event -> "SPOOLED".equals(event.getEventType())));
+    }
+
+    /**
+     * Test that counts aggregated on the write path are flushed to counter items and read back.
+     */
+    @Test
+    void testPreAggregatedCounters() {
+        DynamoDbClient lowLevelClient = DynamoDBClientFactory.createLocalClient();
+        try (EventCounterAggregator counters =
+                     new EventCounterAggregator(lowLevelClient, 3, Duration.ofHours(1))) {
+            eventService.setEventCounters(counters);
+            Instant start = Instant.now();
+            for (int i = 0; i < 30; i++) {
+                eventService.recordShardedEvent("CLICK", "click-" + i, "Data " + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                eventService.recordShardedEvent("VIEW", "view-" + i, "Data " + i);
+            }
+            assertTrue(counters.flush() >= 2);
+            // A second flush has nothing left to write, and must not double the counts
+            assertEquals(0, counters.flush());
+
+            Instant end = Instant.now().plusSeconds(1);
+            assertEquals(30, counters.getCount("CLICK", start, end));
+            assertEquals(10, counters.getCount("VIEW", start, end));
+            assertEquals(0, counters.getCount("CLICK", end, end.plusSeconds(3600)));
+            assertEquals(30, counters.getCountsPerMinute("CLICK", start, end).values().stream()
+                    .mapToLong(Long::longValue).sum());
+        } finally {
+            eventService.setEventCounters(null);
+        }
+        // Counter items live in their own partitions and do not show up as events
+        assertEquals(40, eventService.getEventsByDate(TODAY).size());
+    }
+
+    /**
+     * Test paging through a day's events with the composite cursor.
+     */
+    @Test
+    void testPaginationWithCompositeCursor() throws Exception {
+        for (int i = 0; i < 23; i++) {
+            eventService.recordShardedEvent("PAGED", "paged-" + i, "Data " + i);
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPage<EventEntity> page = eventService.getEventsByDate(TODAY, 5, cursor);
+            assertTrue(page.getItems().size() <= 5);
+            page.getItems().forEach(event -> paged.add(event.getEventId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(eventService.streamEventsByDateInTimeOrder(TODAY)
+                .map(EventEntity::getEventId).toList(), paged);
+        assertEquals(23, paged.size());
+        assertTrue(pages >= 5 && pages <= 6);
+
+        // A cursor cannot be used for another date
+        String firstCursor = eventService.getEventsByDate(TODAY, 5, null).getNextCursor();
+        assertThrows(IllegalArgumentException.class,
+                () -> eventService.getEventsByDate(TODAY.minusDays(1), 5, firstCursor));
+        assertThrows(IllegalArgumentException.class,
+                () -> eventService.getEventsByDate(TODAY, 5, "not-a-cursor"));
+    }
+}
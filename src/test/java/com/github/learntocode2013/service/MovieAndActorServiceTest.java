@@ -4,6 +4,7 @@ import com.github.learntocode2013.model.MovieAndActor;
 import com.github.learntocode2013.model.MovieAndActor.Genre;
 import com.github.learntocode2013.util.DynamoDBClientFactory;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +83,127 @@ class MovieAndActorServiceTest {
     });
   }
 
+  @Test
+  @Order(2)
+  void fetchCastOfMovie_Via_Movie_Index() {
+    var response = subject.queryCastOfMovie("Toy Story", List.of("actor", "role"));
+    Assertions.assertTrue(response.isSuccess());
+    Assertions.assertEquals(2, response.get().size());
+    response.get().forEach(item -> {
+      log.info("{} played {} in Toy Story", item.getActor(), item.getRole());
+      Assertions.assertNotNull(item.getRole());
+      Assertions.assertNull(item.getGenre());
+    });
+  }
+
+  @Test
+  @Order(2)
+  void fetchCastOfMovie_Rejects_Attributes_Not_In_Index() {
+    var whole = subject.queryCastOfMovie("Toy Story", null);
+    Assertions.assertTrue(whole.isSuccess());
+    whole.get().forEach(item -> Assertions.assertNotNull(item.getYear()));
+
+    var response = subject.queryCastOfMovie("Toy Story", List.of("actor", "genre"));
+    Assertions.assertTrue(response.isFailure());
+    Assertions.assertInstanceOf(IllegalArgumentException.class, response.getCause());
+  }
+
+  @Test
+  @Order(2)
+  void fetchCastOfManyMovies_Concurrently() {
+    var response = subject.queryCastOfMovies(
+        List.of("Toy Story", "Black Swan", "Toy Story", "Not A Movie"),
+        List.of("actor", "movie"),
+        2);
+    Assertions.assertTrue(response.isSuccess());
+    var casts = response.get();
+    Assertions.assertEquals(List.of("Toy Story", "Black Swan", "Not A Movie"),
+        List.copyOf(casts.keySet()));
+    Assertions.assertEquals(2, casts.get("Toy Story").size());
+    Assertions.assertEquals("Natalie Portman", casts.get("Black Swan").getFirst().getActor());
+    Assertions.assertTrue(casts.get("Not A Movie").isEmpty());
+  }
+
+  @Test
+  @Order(2)
+  void fetchMoviesOfActor_PageByPage() {
+    List<MovieAndActor> movies = new ArrayList<>();
+    String cursor = null;
+    do {
+      var page = subject.queryMoviesOfActor("Tom Hanks", null, null, 1, cursor);
+      Assertions.assertTrue(page.isSuccess());
+      Assertions.assertTrue(page.get().getItems().size() <= 1);
+      movies.addAll(page.get().getItems());
+      cursor = page.get().getNextCursor();
+    } while (cursor != null);
+    Assertions.assertEquals(2, movies.size());
+
+    var firstPage = subject.queryMoviesOfActor("Tom Hanks", null, null, 1, null);
+    Assertions.assertTrue(subject.queryMoviesOfActor(
+        "Tim Allen", null, null, 1, firstPage.get().getNextCursor()).isFailure());
+  }
+
+  @Test
+  @Order(2)
+  void fetchFirstMoviesOfActor() {
+    var response = subject.queryFirstMoviesOfActor("Tom Hanks", null, 1);
+    Assertions.assertTrue(response.isSuccess());
+    Assertions.assertEquals(1, response.get().size());
+
+    var dramas = subject.queryFirstMoviesOfActor("Tom Hanks", Genre.DRAMA, 5);
+    Assertions.assertTrue(dramas.isSuccess());
+    Assertions.assertEquals("Cast Away", dramas.get().getFirst().getMovie());
+
+    // More than one page holds
+    var all = subject.queryFirstMoviesOfActor(
+        "Tom Hanks", null, MovieAndActorService.MAX_PAGE_SIZE + 1);
+    Assertions.assertTrue(all.isSuccess());
+    Assertions.assertEquals(2, all.get().size());
+  }
+
+  @Test
+  @Order(2)
+  void traverseTheActorGraph() {
+    try (var traversal = new ActorGraphTraversal(
+        DynamoDBClientFactory.createEnhancedLocalClient(dynamoDbClient))) {
+      var coStars = traversal.coStarsOf("Tom Hanks");
+      Assertions.assertTrue(coStars.isSuccess());
+      Assertions.assertEquals(Map.of("Tim Allen", List.of("Toy Story")), coStars.get());
+
+      var path = traversal.shortestPath("Tim Allen", "Tom Hanks");
+      Assertions.assertTrue(path.isSuccess());
+      Assertions.assertEquals(List.of("Tim Allen", "Toy Story", "Tom Hanks"), path.get().get());
+      Assertions.assertEquals(1, traversal.degreesOfSeparation("Tom Hanks", "Tim Allen")
+          .get().getAsInt());
+      Assertions.assertTrue(traversal.degreesOfSeparation("Tom Hanks", "Natalie Portman")
+          .get().isEmpty());
+      Assertions.assertTrue(traversal.cachedEdgeLists() > 0);
+    }
+  }
+
+  @Test
+  @Order(2)
+  void reconcilingTheTableIsIdempotent() {
+    var first = subject.reconcileTable(dynamoDbClient);
+    Assertions.assertTrue(first.isSuccess());
+    var second = subject.reconcileTable(dynamoDbClient);
+    Assertions.assertTrue(second.isSuccess());
+    Assertions.assertTrue(second.get().isEmpty());
+  }
+
+  @Test
+  @Order(2)
+  void countMoviesWithoutFetchingThem() {
+    var dramas = subject.countMoviesOfActor(dynamoDbClient, "Tom Hanks", Genre.DRAMA);
+    Assertions.assertTrue(dramas.isSuccess());
+    Assertions.assertEquals(1, dramas.get().getCount());
+    Assertions.assertEquals(2, dramas.get().getScannedCount());
+
+    var perGenre = subject.countMoviesPerGenre(dynamoDbClient, "Tom Hanks");
+    Assertions.assertTrue(perGenre.isSuccess());
+    Assertions.assertEquals(Map.of(Genre.DRAMA, 1L, Genre.CHILDREN, 1L), perGenre.get());
+  }
+
   private static void loadData(Map<String, List<MovieAndActor>> data) {
     for (Map.Entry<String, List<MovieAndActor>> entry : data.entrySet()) {
       entry.getValue().forEach(item -> subject.saveItem(item));
@@ -0,0 +1,219 @@
+package com.github.learntocode2013.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.learntocode2013.dynamodb.DynamoDBLocalTestUtil;
+import com.github.learntocode2013.dynamodb.DynamoDBTableTestUtil;
+import com.github.learntocode2013.model.EventEntity;
+import com.github.learntocode2013.service.EventService;
+import com.github.learntocode2013.util.DynamoDBClientFactory;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * Test class for StreamConsumer against the stream of the Events table in DynamoDB Local.
+ */
+class StreamConsumerTest {
+  private static final StreamConsumerConfig CONFIG = StreamConsumerConfig.builder()
+      .pollInterval(Duration.ofMillis(50))
+      .shardDiscoveryInterval(Duration.ofMillis(200))
+      .initialRetryBackoff(Duration.ofMillis(10))
+      .build();
+  private static DynamoDbEnhancedClient enhancedClient;
+  private static DynamoDbTable<EventEntity> eventTable;
+  private static DynamoDbStreamsClient streamsClient;
+  private static String streamArn;
+
+  @BeforeAll
+  static void setupClass() throws Exception {
+    enhancedClient = DynamoDBLocalTestUtil.startInMemoryDynamoDB();
+    eventTable = DynamoDBTableTestUtil.createTable(
+        enhancedClient, EventEntity.class, EventService.TABLE_NAME);
+    DynamoDbClient dynamoDbClient = DynamoDBClientFactory.createLocalClient();
+    streamArn = StreamConsumer.enableStream(
+        dynamoDbClient, EventService.TABLE_NAME, StreamViewType.NEW_AND_OLD_IMAGES);
+    streamsClient = DynamoDBClientFactory.createLocalStreamsClient();
+  }
+
+  @AfterAll
+  static void tearDownClass() throws Exception {
+    DynamoDBTableTestUtil.deleteTable(eventTable, enhancedClient, EventService.TABLE_NAME);
+    DynamoDBLocalTestUtil.stopInMemoryDynamoDB();
+  }
+
+  @Test
+  void existingStreamIsOnlyReusedIfItCarriesTheRequestedImages() {
+    DynamoDbClient dynamoDbClient = DynamoDBClientFactory.createLocalClient();
+    assertEquals(streamArn, StreamConsumer.enableStream(
+        dynamoDbClient, EventService.TABLE_NAME, StreamViewType.NEW_IMAGE));
+
+    assertTrue(StreamConsumer.covers(StreamViewType.NEW_IMAGE, StreamViewType.KEYS_ONLY));
+    assertFalse(StreamConsumer.covers(StreamViewType.KEYS_ONLY, StreamViewType.NEW_IMAGE));
+    assertFalse(StreamConsumer.covers(StreamViewType.OLD_IMAGE, StreamViewType.NEW_IMAGE));
+    assertFalse(StreamConsumer.covers(
+        StreamViewType.NEW_IMAGE, StreamViewType.NEW_AND_OLD_IMAGES));
+  }
+
+  /**
+   * Records arrive in order per shard, a failing handler gets the same batch again,
+   * and a restarted consumer resumes after its checkpoints.
+   */
+  @Test
+  void consumesInOrderAndResumesFromCheckpoints() throws Exception {
+    EventService eventService = new EventService(enhancedClient, 4);
+    CheckpointStore checkpoints = new InMemoryCheckpointStore();
+    Map<String, List<Record>> received = new ConcurrentHashMap<>();
+    AtomicBoolean failOnce = new AtomicBoolean(true);
+    StreamRecordHandler handler = (shardId, records) -> {
+      if (failOnce.compareAndSet(true, false)) {
+        throw new IllegalStateException("Simulated projection failure");
+      }
+      received.computeIfAbsent(shardId, id -> new ArrayList<>()).addAll(records);
+    };
+
+    try (StreamConsumer consumer =
+        new StreamConsumer(streamsClient, streamArn, handler, checkpoints, CONFIG)) {
+      consumer.start();
+      for (int i = 0; i < 50; i++) {
+        eventService.recordShardedEvent("STREAMED", "streamed-" + i, "Data " + i);
+      }
+      awaitTrue(() -> count(received) == 50);
+    }
+
+    received.forEach((shardId, records) -> {
+      for (int i = 1; i < records.size(); i++) {
+        BigInteger previous = new BigInteger(records.get(i - 1).dynamodb().sequenceNumber());
+        BigInteger current = new BigInteger(records.get(i).dynamodb().sequenceNumber());
+        assertTrue(previous.compareTo(current) < 0, "Records of " + shardId + " out of order");
+      }
+      assertEquals(records.get(records.size() - 1).dynamodb().sequenceNumber(),
+          checkpoints.sequenceNumber(streamArn, shardId).orElseThrow());
+    });
+
+    // Only the changes made while the consumer was down are delivered after a restart
+    received.clear();
+    for (int i = 0; i < 5; i++) {
+      eventService.recordShardedEvent("STREAMED", "after-restart-" + i, "Data " + i);
+    }
+    try (StreamConsumer consumer =
+        new StreamConsumer(streamsClient, streamArn, handler, checkpoints, CONFIG)) {
+      consumer.start();
+      awaitTrue(() -> count(received) >= 5);
+      TimeUnit.MILLISECONDS.sleep(500);
+    }
+    assertEquals(5, count(received));
+  }
+
+  @Test
+  void readsEveryOpenShardWhenThereAreMoreShardsThanSlots() throws Exception {
+    List<String> openShards = List.of("open-1", "open-2", "open-3");
+    List<String> closedShards = List.of("closed-1", "closed-2");
+    StreamConsumerConfig oneSlot = CONFIG.toBuilder().maxConcurrentShards(1).build();
+    Map<String, List<Record>> received = new ConcurrentHashMap<>();
+    StreamRecordHandler handler = (shardId, records) ->
+        received.computeIfAbsent(shardId, id -> new ArrayList<>()).addAll(records);
+
+    try (StreamConsumer consumer = new StreamConsumer(
+        new FakeStreamsClient(openShards, closedShards), "fake-stream", handler,
+        new InMemoryCheckpointStore(), oneSlot)) {
+      consumer.start();
+      awaitTrue(() -> received.size() == 5);
+      // Open shards keep their workers, closed ones were read to their end one at a time
+      awaitTrue(() -> consumer.activeShards().equals(Set.copyOf(openShards)));
+    }
+  }
+
+  private static int count(Map<String, List<Record>> received) {
+    return received.values().stream().mapToInt(List::size).sum();
+  }
+
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "Timed out waiting for stream records");
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
+  /**
+   * Streams client serving open shards that never close and closed shards with one record.
+   */
+  private static class FakeStreamsClient implements DynamoDbStreamsClient {
+    private final List<String> openShards;
+    private final List<String> closedShards;
+
+    FakeStreamsClient(List<String> openShards, List<String> closedShards) {
+      this.openShards = openShards;
+      this.closedShards = closedShards;
+    }
+
+    @Override
+    public DescribeStreamResponse describeStream(DescribeStreamRequest request) {
+      List<Shard> shards = new ArrayList<>();
+      closedShards.forEach(shardId -> shards.add(Shard.builder()
+          .shardId(shardId)
+          .sequenceNumberRange(r -> r.startingSequenceNumber("1").endingSequenceNumber("1"))
+          .build()));
+      openShards.forEach(shardId -> shards.add(Shard.builder()
+          .shardId(shardId)
+          .sequenceNumberRange(r -> r.startingSequenceNumber("1"))
+          .build()));
+      return DescribeStreamResponse.builder()
+          .streamDescription(d -> d.streamArn(request.streamArn()).shards(shards))
+          .build();
+    }
+
+    @Override
+    public GetShardIteratorResponse getShardIterator(GetShardIteratorRequest request) {
+      return GetShardIteratorResponse.builder()
+          .shardIterator(request.shardId() + "#" + (request.sequenceNumber() == null ? 0 : 1))
+          .build();
+    }
+
+    @Override
+    public GetRecordsResponse getRecords(GetRecordsRequest request) {
+      String shardId = request.shardIterator().split("#")[0];
+      boolean first = request.shardIterator().endsWith("#0");
+      List<Record> records = first
+          ? List.of(Record.builder().dynamodb(r -> r.sequenceNumber("1")).build())
+          : List.of();
+      String next = closedShards.contains(shardId) ? null : shardId + "#1";
+      return GetRecordsResponse.builder().records(records).nextShardIterator(next).build();
+    }
+
+    @Override
+    public String serviceName() {
+      return "fake-streams";
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.github.learntocode2013.util;
+
+import com.github.learntocode2013.util.CapacityAccountant.TenantUsage;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.Capacity;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+
+class CapacityAccountantTest {
+  private static final Duration MINUTE = Duration.ofMinutes(1);
+  private final AtomicLong now = new AtomicLong(MINUTE.toMillis() * 1_000);
+  private final CapacityAccountant subject = new CapacityAccountant(MINUTE, 5, now::get);
+
+  private static ConsumedCapacity consumed(double units) {
+    return ConsumedCapacity.builder().tableName("SaasApp").capacityUnits(units).build();
+  }
+
+  @Test
+  void heaviestTenantsComeFirst() {
+    subject.record("Netflix", consumed(1.0));
+    subject.record("Apple", consumed(5.0));
+    subject.record("Google", consumed(2.5));
+    subject.record("Netflix", consumed(0.5));
+
+    List<TenantUsage> top = subject.topTenants(2, MINUTE);
+
+    Assertions.assertEquals(
+        List.of(new TenantUsage("Apple", 5.0), new TenantUsage("Google", 2.5)), top);
+    Assertions.assertEquals(1.5, subject.usage("Netflix", MINUTE), 1e-9);
+    Assertions.assertEquals(0, subject.usage("Amazon", MINUTE));
+  }
+
+  @Test
+  void usageSlidesOutOfTheWindow() {
+    subject.record("Netflix", consumed(1.0));
+    now.addAndGet(MINUTE.toMillis());
+    subject.record("Netflix", consumed(2.0));
+
+    Assertions.assertEquals(2.0, subject.usage("Netflix", MINUTE), 1e-9);
+    Assertions.assertEquals(3.0, subject.usage("Netflix", MINUTE.multipliedBy(2)), 1e-9);
+
+    // The first bucket is reused five minutes later and starts from zero
+    now.addAndGet(MINUTE.multipliedBy(4).toMillis());
+    subject.record("Netflix", consumed(4.0));
+    Assertions.assertEquals(4.0, subject.usage("Netflix", MINUTE), 1e-9);
+    Assertions.assertEquals(6.0, subject.usage("Netflix", MINUTE.multipliedBy(5)), 1e-9);
+    // Windows longer than the kept buckets are cut to them
+    Assertions.assertEquals(6.0, subject.usage("Netflix", Duration.ofDays(1)), 1e-9);
+  }
+
+  @Test
+  void indexCapacityIsKeptPerIndex() {
+    subject.record("Netflix", consumed(3.0).toBuilder()
+        .globalSecondaryIndexes(Map.of("gsi_tenant_items", Capacity.builder()
+            .capacityUnits(2.0).build()))
+        .build());
+
+    Assertions.assertEquals(
+        Map.of(CapacityAccountant.TOTAL, 3.0, "gsi_tenant_items", 2.0),
+        subject.usageByResource("Netflix", MINUTE));
+  }
+
+  @Test
+  void idleTenantsAreEvicted() {
+    subject.record("Netflix", consumed(1.0));
+    now.addAndGet(MINUTE.multipliedBy(3).toMillis());
+    subject.record("Apple", consumed(1.0));
+
+    Assertions.assertEquals(0, subject.evictIdleTenants());
+    now.addAndGet(MINUTE.multipliedBy(2).toMillis());
+    Assertions.assertEquals(1, subject.evictIdleTenants());
+    Assertions.assertEquals(List.of(new TenantUsage("Apple", 1.0)),
+        subject.topTenants(10, MINUTE.multipliedBy(5)));
+  }
+}
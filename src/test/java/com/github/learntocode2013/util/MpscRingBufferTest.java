@@ -0,0 +1,105 @@
+package com.github.learntocode2013.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+  private static final class Entry {
+    long value;
+  }
+
+  @Test
+  void capacityIsRoundedUpToPowerOfTwo() {
+    Assertions.assertEquals(2, new MpscRingBuffer<>(1, Entry::new).capacity());
+    Assertions.assertEquals(8, new MpscRingBuffer<>(8, Entry::new).capacity());
+    Assertions.assertEquals(16, new MpscRingBuffer<>(9, Entry::new).capacity());
+  }
+
+  @Test
+  void singleSlotIsNotClaimedTwiceBeforeDrain() {
+    var ring = new MpscRingBuffer<>(1, Entry::new);
+    long first = ring.tryClaim();
+    ring.get(first).value = 1;
+    ring.publish(first);
+    long second = ring.tryClaim();
+    ring.get(second).value = 2;
+    ring.publish(second);
+    Assertions.assertEquals(-1, ring.tryClaim());
+
+    long[] drained = new long[2];
+    int[] count = {0};
+    Assertions.assertEquals(2, ring.drain(2, entry -> drained[count[0]++] = entry.value));
+    Assertions.assertArrayEquals(new long[] {1, 2}, drained);
+  }
+
+  @Test
+  void claimFailsWhenFullAndSucceedsAfterDrain() {
+    var ring = new MpscRingBuffer<>(4, Entry::new);
+    for (int i = 0; i < 4; i++) {
+      long sequence = ring.tryClaim();
+      ring.get(sequence).value = i;
+      ring.publish(sequence);
+    }
+    Assertions.assertEquals(-1, ring.tryClaim());
+    Assertions.assertEquals(4, ring.size());
+
+    long[] drained = new long[2];
+    int[] count = {0};
+    Assertions.assertEquals(2, ring.drain(2, entry -> drained[count[0]++] = entry.value));
+    Assertions.assertArrayEquals(new long[] {0, 1}, drained);
+    Assertions.assertTrue(ring.tryClaim() >= 0);
+  }
+
+  @Test
+  void unpublishedEntryBlocksConsumerUntilPublished() {
+    var ring = new MpscRingBuffer<>(4, Entry::new);
+    long first = ring.tryClaim();
+    long second = ring.tryClaim();
+    ring.publish(second);
+    Assertions.assertEquals(0, ring.drain(4, entry -> { }));
+    ring.publish(first);
+    Assertions.assertEquals(2, ring.drain(4, entry -> { }));
+  }
+
+  @Test
+  void concurrentProducersKeepTheirOwnOrder() throws Exception {
+    int producers = 4;
+    int perProducer = 50_000;
+    var ring = new MpscRingBuffer<>(256, Entry::new);
+    var started = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      long base = p * 1_000_000L;
+      Thread.ofPlatform().daemon(true).start(() -> {
+        started.countDown();
+        for (int i = 0; i < perProducer; i++) {
+          long sequence;
+          while ((sequence = ring.tryClaim()) < 0) {
+            Thread.onSpinWait();
+          }
+          ring.get(sequence).value = base + i;
+          ring.publish(sequence);
+        }
+      });
+    }
+    Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    long[] last = new long[producers];
+    Arrays.fill(last, -1);
+    boolean[] ordered = {true};
+    long received = 0;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (received < (long) producers * perProducer && System.nanoTime() < deadline) {
+      received += ring.drain(64, entry -> {
+        int producer = (int) (entry.value / 1_000_000L);
+        long index = entry.value % 1_000_000L;
+        ordered[0] &= index == last[producer] + 1;
+        last[producer] = index;
+      });
+    }
+    Assertions.assertEquals((long) producers * perProducer, received);
+    Assertions.assertTrue(ordered[0]);
+  }
+}
@@ -0,0 +1,70 @@
+package com.github.learntocode2013.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ShardFanOutTest {
+  private static final ShardFanOut POOL = ShardFanOut.boundedPool(4, Duration.ofSeconds(5));
+  private static final ShardFanOut VIRTUAL = ShardFanOut.virtualThreads(4, Duration.ofSeconds(5));
+
+  @AfterAll
+  static void tearDown() {
+    POOL.close();
+    VIRTUAL.close();
+  }
+
+  @Test
+  void resultsAreReturnedInTaskOrder() {
+    List<Callable<Integer>> tasks = IntStream.range(0, 16)
+        .<Callable<Integer>>mapToObj(i -> () -> {
+          TimeUnit.MILLISECONDS.sleep(16 - i);
+          return i;
+        })
+        .toList();
+    var expected = IntStream.range(0, 16).boxed().toList();
+    Assertions.assertEquals(expected, POOL.invokeAll(tasks));
+    Assertions.assertEquals(expected, VIRTUAL.invokeAll(tasks));
+  }
+
+  @Test
+  void failingShardCancelsOutstandingShards() throws Exception {
+    var cancelled = new CountDownLatch(1);
+    List<Callable<String>> tasks = List.of(
+        () -> {
+          try {
+            TimeUnit.SECONDS.sleep(10);
+            return "slow";
+          } catch (InterruptedException e) {
+            cancelled.countDown();
+            throw e;
+          }
+        },
+        () -> {
+          throw new IllegalStateException("shard unavailable");
+        });
+    var error = Assertions.assertThrows(CompletionException.class,
+        () -> VIRTUAL.invokeAll(tasks));
+    Assertions.assertInstanceOf(IllegalStateException.class, error.getCause());
+    Assertions.assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void fanOutFailsOnceDeadlinePasses() {
+    List<Callable<String>> tasks = List.of(() -> {
+      TimeUnit.SECONDS.sleep(10);
+      return "slow";
+    });
+    var error = Assertions.assertThrows(CompletionException.class,
+        () -> POOL.invokeAll(tasks, Duration.ofMillis(100)));
+    Assertions.assertInstanceOf(TimeoutException.class, error.getCause());
+  }
+}
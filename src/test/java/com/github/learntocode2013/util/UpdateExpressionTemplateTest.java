@@ -0,0 +1,71 @@
+package com.github.learntocode2013.util;
+
+import static com.github.learntocode2013.util.UpdateExpressionTemplate.string;
+import static com.github.learntocode2013.util.UpdateExpressionTemplate.stringSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+class UpdateExpressionTemplateTest {
+  private record Change(String email, String mobile, Set<String> added, Set<String> removed) {
+  }
+
+  private static final UpdateExpressionTemplate<Change> TEMPLATE =
+      UpdateExpressionTemplate.<Change>builder()
+          .set("phoneNumbers.MobileNumber", change -> string(change.mobile()))
+          .set("emailAddress", change -> string(change.email()))
+          .add("admins", change -> stringSet(change.added()))
+          .delete("admins", change -> stringSet(change.removed()))
+          .build();
+
+  @Test
+  void onlyPresentClausesAreRendered() {
+    var update = TEMPLATE.bind(new Change("a@b.com", "555", Set.of("Ann"), null));
+    Assertions.assertEquals("SET #n0.#n1 = :v0, #n2 = :v1 ADD #n3 :v2", update.updateExpression());
+    Assertions.assertEquals(Map.of(
+        "#n0", "phoneNumbers",
+        "#n1", "MobileNumber",
+        "#n2", "emailAddress",
+        "#n3", "admins"), update.names());
+    Assertions.assertEquals(Set.of(":v0", ":v1", ":v2"), update.values().keySet());
+    Assertions.assertNull(update.conditionExpression());
+
+    var removal = TEMPLATE.bind(new Change(null, null, Set.of(), Set.of("Ann")));
+    Assertions.assertEquals("DELETE #n3 :v3", removal.updateExpression());
+    Assertions.assertEquals(Map.of("#n3", "admins"), removal.names());
+    Assertions.assertEquals(Map.of(":v3", AttributeValue.fromSs(List.of("Ann"))),
+        removal.values());
+  }
+
+  @Test
+  void shapesAreCompiledOnce() {
+    var first = TEMPLATE.bind(new Change("a@b.com", null, null, null));
+    var second = TEMPLATE.bind(new Change("c@d.com", null, null, null));
+    Assertions.assertSame(first.updateExpression(), second.updateExpression());
+    Assertions.assertSame(first.names(), second.names());
+    Assertions.assertNotEquals(first.values(), second.values());
+  }
+
+  @Test
+  void emptyUpdateIsRejected() {
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> TEMPLATE.bind(new Change(null, null, Set.of(), null)));
+  }
+
+  @Test
+  void conditionPlaceholdersAreBoundWithEveryShape() {
+    var conditional = UpdateExpressionTemplate.<Change>builder()
+        .set("emailAddress", change -> string(change.email()))
+        .condition("#organization = :organization", Set.of("organization"),
+            Map.of(":organization", change -> AttributeValue.fromS("Amazon")))
+        .build();
+    var update = conditional.bind(new Change("a@b.com", null, null, null));
+    Assertions.assertEquals("#organization = :organization", update.conditionExpression());
+    Assertions.assertEquals("organization", update.names().get("#organization"));
+    Assertions.assertEquals(AttributeValue.fromS("Amazon"), update.values().get(":organization"));
+  }
+}